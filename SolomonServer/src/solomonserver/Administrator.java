@@ -9,6 +9,8 @@ import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  *
@@ -18,6 +20,8 @@ public class Administrator
         extends UnicastRemoteObject 
         implements IAdministrator {
     
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+    
     Administrator()
             throws RemoteException {
     }
@@ -28,6 +32,12 @@ public class Administrator
         return ConnectionTable.getInstance().getPlayerList( null );
     }
 
+    @Override
+    public PlayerListDelta getPlayerListSince( long version ) throws RemoteException
+    {
+        return ConnectionTable.getInstance().getPlayerListSince( version );
+    }
+
     @Override
     public void stopServer(String challenge) throws RemoteException {
         
@@ -57,12 +67,101 @@ public class Administrator
     
     @Override
     public void killConnection(int PlayerID) throws RemoteException {
-        throw new UnsupportedOperationException("Not supported yet.");
+        ConnectionTable table = ConnectionTable.getInstance();
+        Connection player = table.getPlayer( PlayerID );
+        if (player!=null)
+            table.getReaper().reap( player, ResultCode.E_SERVER_DOWN );
     }
 
     @Override
-    public void killMatch(int matchID) throws RemoteException {
-        throw new UnsupportedOperationException("Not supported yet.");
+    public ReaperReport getReaperReport() throws RemoteException {
+        return ConnectionTable.getInstance().getReaper().getReport();
+    }
+
+    @Override
+    public ResultCode startRoundRobin( int roundsPerMatch, int parallelism ) throws RemoteException {
+        ArrayList<Connection> players = ConnectionTable.getInstance().getAvailablePlayers();
+        if (players.size()<2)
+            return ResultCode.RC_REQUEST_DENIED;
+        return Tournament.start( new RoundRobinTournament( players, roundsPerMatch, 
+                parallelismFor( players, parallelism ) ) );
+    }
+    
+    @Override
+    public ResultCode startSwiss( int numberOfRounds, int roundsPerMatch, int parallelism ) throws RemoteException {
+        ArrayList<Connection> players = ConnectionTable.getInstance().getAvailablePlayers();
+        if (players.size()<2)
+            return ResultCode.RC_REQUEST_DENIED;
+        return Tournament.start( new SwissTournament( players, numberOfRounds, roundsPerMatch, 
+                parallelismFor( players, parallelism ) ) );
+    }
+    
+    @Override
+    public ResultCode startElimination( boolean doubleElimination, int roundsPerMatch, int parallelism ) throws RemoteException {
+        ArrayList<Connection> players = ConnectionTable.getInstance().getAvailablePlayers();
+        if (players.size()<2)
+            return ResultCode.RC_REQUEST_DENIED;
+        return Tournament.start( new EliminationTournament( players, doubleElimination, roundsPerMatch, 
+                parallelismFor( players, parallelism ) ) );
+    }
+    
+    /**
+     * @return the parallelism asked for, or if none, enough for every 
+     * player to be in a match, and at least one match per processor
+     */
+    private static int parallelismFor( ArrayList<Connection> players, int parallelism ) {
+        if (parallelism>0)
+            return parallelism;
+        return Math.max( Runtime.getRuntime().availableProcessors(), players.size()/2 );
+    }
+
+    @Override
+    public TournamentReport getTournamentReport() throws RemoteException {
+        Tournament tournament = Tournament.getCurrent();
+        return tournament==null ? null : tournament.getReport();
+    }
+
+    @Override
+    public ArrayList<RatingEntry> getLeaderboard( int k ) throws RemoteException {
+        return RatingService.getInstance().getLeaderboard( k );
+    }
+
+    @Override
+    public RatingEntry getRating( String teamName ) throws RemoteException {
+        return RatingService.getInstance().getRating( teamName );
+    }
+
+    @Override
+    public TeamAnalytics getTeamAnalytics( String teamName ) throws RemoteException {
+        return GestureAnalytics.getInstance().getTeamAnalytics( teamName );
+    }
+
+    @Override
+    public ArrayList<LatencySummary> getLatencies() throws RemoteException {
+        return RpcMetrics.getSummaries();
+    }
+
+    @Override
+    public void resetLatencies() throws RemoteException {
+        RpcMetrics.reset();
+    }
+
+    @Override
+    public ArrayList<MatchEntry> getMatchList( boolean inPlayOnly ) throws RemoteException {
+        ArrayList<MatchEntry> list = new ArrayList<MatchEntry>();
+        for (Match match : MatchTable.getInstance().getMatchList( 
+                inPlayOnly ? MatchTable.Filter.IN_PLAY : MatchTable.Filter.NONE ))
+            list.add( new MatchEntry(match) );
+        return list;
+    }
+
+    @Override
+    public ResultCode killMatch(int matchID) throws RemoteException {
+        if (!MatchTable.getInstance().killMatch( matchID, ResultCode.E_MATCH_ENDED )) {
+            l.log(Level.WARNING,"cannot kill match {0}: no such match in play",String.valueOf(matchID));
+            return ResultCode.E_MATCH_ENDED;
+        }
+        return ResultCode.RC_OK;
     }
 
     @Override
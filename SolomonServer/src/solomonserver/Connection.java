@@ -4,7 +4,6 @@ import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static solomonserver.ResultCode.*;
@@ -14,12 +13,45 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     
     private String teamName = null;
     private String origin = null;
-    private IResponse response;
-    private Match match = null;
-    public Date lastKeepaliveReceived = new Date();
+    private final int id;
+    private volatile IResponse response;
+    private volatile Match match = null;
+    
+    /**
+     * when we last heard from the client, on the System.nanoTime() scale
+     */
+    private volatile long lastKeepaliveReceived = System.nanoTime();
+    
+    /**
+     * this connection's keepalive deadline, owned by the ConnectionTable
+     */
+    volatile TimingWheel.Timeout<Connection> keepaliveTimeout = null;
     private boolean bNotAcceptingMatches = false;
+    
+    /**
+     * set once the client declines a pushed score: per INotification, it 
+     * will never accept one, so we stop sending them
+     */
+    private volatile boolean bNotAcceptingScores = false;
+    
+    /**
+     * pushes of round results to this client, delivered in order
+     */
+    final ScoreNotifier.Lane scoreLane = new ScoreNotifier.Lane();
 
-    private ConnectionState state = ConnectionState.DISCONNECTED;
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    
+    /**
+     * set for a connection recovered after a crash, until its client 
+     * registers again
+     */
+    private boolean bAwaitingClient = false;
+    
+    /**
+     * set while the connection is counted in the connection table's 
+     * state counts; guarded by the connection
+     */
+    boolean counted = false;
     
         
     public Connection( String teamName, IResponse response, String origin )
@@ -29,13 +61,73 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
         this.teamName = teamName;
         this.response = response;
         this.origin   = origin;
+        this.id       = hashCode();
         state = ConnectionState.AVAILABLE_FOR_PLAY;
     }
     
+    /**
+     * Rebuild a connection recovered after a crash.  It has no client 
+     * until one registers again with the same team name and origin, and 
+     * until then is a ZOMBIE: one that does not come back is reaped.
+     */
+    Connection( int id, String teamName, String origin )
+            throws RemoteException
+    {
+        this.teamName = teamName;
+        this.response = null;
+        this.origin   = origin;
+        this.id       = id;
+        bAwaitingClient = true;
+        state = ConnectionState.ZOMBIE;
+    }
+    
+    /**
+     * Give a recovered connection the match it was playing.
+     */
+    void resumeMatch( Match m )
+    {
+        match = m;
+    }
+    
+    /**
+     * Hand a recovered connection back to its returning client, which 
+     * carries on where it was: in its match, at the round it had reached, 
+     * or available for play.
+     * 
+     * @return false if this connection was not waiting for its client
+     */
+    synchronized boolean reattach( IResponse response )
+    {
+        if (!bAwaitingClient)
+            return false;
+        bAwaitingClient = false;
+        this.response = response;
+        lastKeepaliveReceived = System.nanoTime();
+        Match m = match;
+        changeState( m!=null && !m.isGameOver() 
+                ? ConnectionState.MATCH_IN_PLAY 
+                : ConnectionState.AVAILABLE_FOR_PLAY );
+        return true;
+    }
+    
     ConnectionState getState()
     {
         return state;
     }
+    
+    Match getMatch()
+    {
+        return match;
+    }
+    
+    /**
+     * @return the in-process Strategy playing as this connection, or null 
+     * for a remote client
+     */
+    Strategy getStrategy()
+    {
+        return null;
+    }
         
     public String getTeamName()
     {
@@ -58,15 +150,22 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     @Override
     public int getID()
     {
-        return this.hashCode();
+        return id;
     }
     
     @Override
     public void keepAlive()
             throws RemoteException
     {
-        lastKeepaliveReceived = new Date();
+        long now = System.nanoTime();
+        lastKeepaliveReceived = now;
+        RpcMetrics.record( RpcMetrics.Op.KEEP_ALIVE, now );
     } 
+    
+    long getLastKeepalive()
+    {
+        return lastKeepaliveReceived;
+    }
            
     
     @Override
@@ -79,39 +178,116 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     public ResultCode requestRemoteMatch( int playerID, int maxNumberOfRounds ) 
             throws RemoteException 
     {
-        l.entering("Connection","requestRemoteMatch",playerID);
-        ResultCode rc = RC_OK;
-        
-        if (state!=ConnectionState.AVAILABLE_FOR_PLAY)
-            return E_WRONG_STATE;
+        long start = System.nanoTime();
+        try {
+            l.entering("Connection","requestRemoteMatch",playerID);
+            ResultCode rc = RC_OK;
+
+            if (state!=ConnectionState.AVAILABLE_FOR_PLAY)
+                return E_WRONG_STATE;
+
+            changeState( ConnectionState.REQUEST_IN_PROGRESS );
+
+            Connection player2 = ConnectionTable.getInstance().getPlayer( playerID );
+            if (player2==null) {
+                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+                l.log(Level.WARNING,"match requested, but opponent not in table",playerID);
+                rc = E_UNRECOGNIZED_PLAYER;
+            }
+
+            else {
+                if (match!=null) {
+                    MatchTable.getInstance().retireMatch(match);
+                }
+                match = new Match( this, player2, maxNumberOfRounds );
+                rc = player2.requestMatch( this, match, maxNumberOfRounds );
+                if (rc==RC_OK) {
+                    MatchTable.getInstance().addMatch(match);
+                    changeState( ConnectionState.MATCH_IN_PLAY );
+                    l.log(Level.INFO,"BEGIN match between {0} and {1}",new Object[] {this,player2});
+
+                    // two in-process strategies: nobody else will drive the
+                    // match, so play it out now
+                    if (getStrategy()!=null && player2.getStrategy()!=null)
+                        match.playOut();
+                }
+                else {
+                    match = null;
+                    changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+                    l.log(Level.INFO,"REFUSED match between {0} and {1}",new Object[] {this,player2});
+                }
+            }
+            return rc;
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.REQUEST_REMOTE_MATCH, start );
+        }
+    }
+    
+    /**
+     * Start a match arranged by the server (by a Tournament) between this 
+     * player and another.  Each is asked, just as if challenged by the 
+     * other; if either declines, or is busy, neither plays.
+     * 
+     * @param m the match, with this connection as player one
+     * @return null if the match has begun (and, if both players are 
+     * in-process strategies, been played out); otherwise the player who 
+     * declined, was busy or could not be reached
+     */
+    Connection arrangeMatch( Match m )
+    {
+        Connection opponent = m.getPlayer2();
+        int maxNumberOfRounds = m.getMaxRounds();
         
-        changeState( ConnectionState.REQUEST_IN_PROGRESS );
+        // a player whose last match is over may not have been marked 
+        // available yet: it is only waiting on its last scorecard's return
+        releaseIfGameOver();
+        opponent.releaseIfGameOver();
         
-        Connection player2 = ConnectionTable.getInstance().getPlayer( playerID );
-        if (player2==null) {
+        Match previous1 = match;
+        Match previous2 = opponent.getMatch();
+        ResultCode rc;
+        try {
+            rc = requestMatch( opponent, m, maxNumberOfRounds );
+        } catch (RemoteException e) {
+            l.log(Level.WARNING,"error arranging match",e);
             changeState( ConnectionState.AVAILABLE_FOR_PLAY );
-            l.log(Level.WARNING,"match requested, but opponent not in table",playerID);
-            rc = E_UNRECOGNIZED_PLAYER;
+            rc = E_NO_CONNECTION;
         }
-            
-        else {
-            if (match!=null) {
-                MatchTable.getInstance().removeMatch(this,match);
-            }
-            match = new Match( this, player2, maxNumberOfRounds );
-            rc = player2.requestMatch( this, match, maxNumberOfRounds );
-            if (rc==RC_OK) {
-                MatchTable.getInstance().addMatch(match);
-                changeState( ConnectionState.MATCH_IN_PLAY );
-                l.log(Level.INFO,"BEGIN match between {0} and {1}",new Object[] {this,player2});
-            }
-            else {
-                match = null;
-                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
-                l.log(Level.INFO,"REFUSED match between {0} and {1}",new Object[] {this,player2});
-            }
+        if (rc!=RC_OK)
+            return this;
+        try {
+            rc = opponent.requestMatch( this, m, maxNumberOfRounds );
+        } catch (RemoteException e) {
+            l.log(Level.WARNING,"error arranging match",e);
+            opponent.changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            rc = E_NO_CONNECTION;
         }
-        return rc;
+        if (rc!=RC_OK) {
+            // this player has already said yes: call it off
+            match = null;
+            abortMatch( RC_REQUEST_DENIED );
+            l.log(Level.INFO,"REFUSED arranged match between {0} and {1}",new Object[] {this,opponent});
+            return opponent;
+        }
+        
+        MatchTable table = MatchTable.getInstance();
+        if (previous1!=null)
+            table.retireMatch( previous1 );
+        if (previous2!=null)
+            table.retireMatch( previous2 );
+        table.addMatch( m );
+        l.log(Level.INFO,"BEGIN arranged match between {0} and {1}",new Object[] {this,opponent});
+        
+        if (getStrategy()!=null && opponent.getStrategy()!=null)
+            m.playOut();
+        return null;
+    }
+    
+    private void releaseIfGameOver()
+    {
+        Match m = match;
+        if (state==ConnectionState.MATCH_IN_PLAY && m!=null && m.isGameOver())
+            changeState( ConnectionState.AVAILABLE_FOR_PLAY );
     }
     
     // TODO: result code if an error?  result code object?
@@ -131,8 +307,14 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
         changeState( ConnectionState.REQUEST_IN_PROGRESS );
 
         // ask, and if amenable, start the match
-        rc = response.requestToInitiateMatch( new PlayerEntry(challenger),
-                                              maxNumberOfRounds);
+        long start = System.nanoTime();
+        try {
+            rc = response.requestToInitiateMatch( new PlayerEntry(challenger),
+                                                  maxNumberOfRounds);
+        } finally {
+            if (getStrategy()==null)
+                RpcMetrics.record( RpcMetrics.Op.REQUEST_TO_INITIATE_MATCH, start );
+        }
         if (rc==RC_OK) {
             this.match = match;
             changeState( ConnectionState.MATCH_IN_PLAY );
@@ -152,24 +334,52 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     public ArrayList<PlayerEntry> getPlayerList() 
             throws RemoteException
     {
-        
-        return ConnectionTable
-                .getInstance()
-                .getPlayerList( this );
+        long start = System.nanoTime();
+        try {
+            return ConnectionTable
+                    .getInstance()
+                    .getPlayerList( this );
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.GET_PLAYER_LIST, start );
+        }
+    }
+    
+    @Override
+    public PlayerListDelta getPlayerListSince( long version )
+            throws RemoteException
+    {
+        long start = System.nanoTime();
+        try {
+            return ConnectionTable
+                    .getInstance()
+                    .getPlayerListSince( version );
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.GET_PLAYER_LIST_SINCE, start );
+        }
     }
 
     @Override
     public ResultCode doGesture( Gesture g ) throws RemoteException {
-        if (match==null)
-            return E_WRONG_STATE;
-        return match.doGesture(this,g);
+        long start = System.nanoTime();
+        try {
+            if (match==null)
+                return E_WRONG_STATE;
+            return match.doGesture(this,g);
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.DO_GESTURE, start );
+        }
     }
 
     @Override
     public void abortingMatch( ResultCode rc ) throws RemoteException {
-        state = ConnectionState.AVAILABLE_FOR_PLAY;
-        if (match!=null)
-            match.abortMatch( this, rc );
+        long start = System.nanoTime();
+        try {
+            changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            if (match!=null)
+                match.abortMatch( this, rc );
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.ABORTING_MATCH, start );
+        }
     }
     
 
@@ -182,23 +392,90 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
      * @param rc remote player's reason for aborting match
      */
     void abortMatch( ResultCode rc ) {
-        state = ConnectionState.AVAILABLE_FOR_PLAY;
+        changeState( ConnectionState.AVAILABLE_FOR_PLAY );
         // best effort: if it fails, we've done all we can
+        long start = System.nanoTime();
         try {
             if (response!=null)
                 response.abortMatch( rc );
         }
         catch (Exception e) {}
+        if (getStrategy()==null)
+            RpcMetrics.record( RpcMetrics.Op.ABORT_MATCH, start );
     }
 
     @Override
     public Scorecard getScorecard() throws RemoteException {
-        if (match==null)
-            return null;
-        Scorecard score = match.getScorecard(this);
-        if (isMatchOver(score))
-            changeState( ConnectionState.AVAILABLE_FOR_PLAY );
-        return score;
+        long start = System.nanoTime();
+        try {
+            if (match==null)
+                return null;
+            Scorecard score = match.getScorecard(this);
+            if (isMatchOver(score))
+                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            return score;
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.GET_SCORECARD, start );
+        }
+    }
+    
+    /**
+     * longest a client may park in awaitScorecard(), playRound() or 
+     * submitGestures(), in milliseconds
+     */
+    static final long MAX_AWAIT_MILLIS = 60000;
+    
+    @Override
+    public Scorecard awaitScorecard( int round, long timeoutMillis ) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            Match m = match;
+            if (m==null)
+                return null;
+            Scorecard score = m.awaitScorecard( this, round,
+                    Math.max( 0, Math.min( timeoutMillis, MAX_AWAIT_MILLIS ) ) );
+            if (isMatchOver(score))
+                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            return score;
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.AWAIT_SCORECARD, start );
+        }
+    }
+    
+    @Override
+    public Scorecard playRound( Gesture g, long timeoutMillis ) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            Match m = match;
+            if (m==null)
+                return null;
+            Scorecard score = m.playRound( this, g,
+                    Math.max( 0, Math.min( timeoutMillis, MAX_AWAIT_MILLIS ) ) );
+            if (score!=null && isMatchOver(score))
+                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            return score;
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.PLAY_ROUND, start );
+        }
+    }
+    
+    @Override
+    public ScorecardBlock submitGestures( Gesture[] gestures, long timeoutMillis ) throws RemoteException {
+        long start = System.nanoTime();
+        try {
+            Match m = match;
+            if (m==null)
+                return null;
+            ScorecardBlock block = m.submitGestures( this, gestures,
+                    Math.max( 0, Math.min( timeoutMillis, MAX_AWAIT_MILLIS ) ) );
+            if (block.roundsPlayed==block.maxRounds
+                    && block.roundsPlayed>0
+                    && state==ConnectionState.MATCH_IN_PLAY)
+                changeState( ConnectionState.AVAILABLE_FOR_PLAY );
+            return block;
+        } finally {
+            RpcMetrics.record( RpcMetrics.Op.SUBMIT_GESTURES, start );
+        }
     }
     
     private boolean isMatchOver( Scorecard score ) {
@@ -208,7 +485,16 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     }
     
     ConnectionState changeState( ConnectionState newState ) {
-        state = newState;
+        ConnectionState oldState;
+        synchronized (this) {
+            oldState = state;
+            state = newState;
+            if (counted)
+                ConnectionTable.getInstance().stateChanged( oldState, newState );
+        }
+        Match m = match;
+        if (m!=null && (oldState==ConnectionState.ZOMBIE || newState==ConnectionState.ZOMBIE))
+            MatchTable.getInstance().updateZombie( m );
         ConnectionTable.getInstance().notifyListeners( 
                 new ListAction( 
                         ListAction.Action.CHANGE, 
@@ -232,13 +518,20 @@ public class Connection extends UnicastRemoteObject implements IConnection, Seri
     public boolean notifyScore( Scorecard score )
     {
         ResultCode rc = RC_CONTINUE;
+        if (bNotAcceptingScores)
+            return false;
+        long start = System.nanoTime();
         try { 
             rc = response.notifyScore( score );
+            if (rc==E_NOT_IMPLEMENTED)
+                bNotAcceptingScores = true;
         } 
         catch (Exception e) {
             l.log(Level.WARNING,"error pushing score",e);
         }
         finally {
+            if (getStrategy()==null)
+                RpcMetrics.record( RpcMetrics.Op.NOTIFY_SCORE, start );
             if (rc==RC_OK && isMatchOver(score))
                 changeState( ConnectionState.AVAILABLE_FOR_PLAY );
         }
@@ -1,16 +1,14 @@
 package solomonserver;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.swing.Timer;
 
 import static solomonserver.ResultCode.*;
 
-public class ConnectionTable 
-    implements ActionListener {
+public class ConnectionTable implements ConnectionTableMBean {
     
     final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
 
@@ -20,73 +18,45 @@ public class ConnectionTable
     };
     
     /**
-     * Maximum number of connections before the server declines requests
+     * Maximum number of connections before the server declines requests.  
+     * May be raised (eg, for a large bot tournament) with the 
+     * solomon.maxConnections system property.
      */
-    static final int MAX_CONNECTIONS = 16;
+    static final int MAX_CONNECTIONS = Integer.getInteger("solomon.maxConnections", 16);
     
     private ConnectionTable()
     {
-        table = new HashMap<Integer,Connection>();
+        table = new ConcurrentHashMap<Integer,Connection>();
+        index = new ConcurrentHashMap<String,Connection>();
 
-        /* pull zombie delay from properties;
-        // TODO need registrar object
-        String zombieDelayString = registrar.getProperty( ZOMBIE_DELAY_KEY );
-        if (zombieDelayString!=null) {
-            zombieDelay = Integer.parseInt(zombieDelayString);
-        }
-        */
-                
         // spawn the zombie killer thread
-        zombieKiller.start();
+        reaper = new ZombieReaper(this);
     }
     
     /**
-     * frequency of invocation of thread to check every connection's 
-     * keepalive status, in milliseconds
+     * watches every connection's keepalives, and reclaims the dead ones
      */
+    private final ZombieReaper reaper;
     
-    private final int ZOMBIE_HEARTBEAT = 5000;
+    ZombieReaper getReaper()
+    {
+        return reaper;
+    }
     
     /**
-     * time after which we consider a connection dead, in seconds
+     * primary table, keyed by unique player ID
      */
-    private final int ZOMBIE_DELAY = 30000; // TODO settable at 30;
-    private int zombieDelay = ZOMBIE_DELAY;
-    private final String ZOMBIE_DELAY_KEY = "zombieDelay";
+    private final ConcurrentHashMap<Integer,Connection> table;
     
     /**
-     * Timer object for repeating invocation of thread that searches and 
-     * removes zombie connections
+     * secondary index, keyed by team name and origin, for finding 
+     * duplicate registrations without scanning the table
      */
-    private Timer zombieKiller = new Timer(ZOMBIE_HEARTBEAT,this);
+    private final ConcurrentHashMap<String,Connection> index;
     
-    /**
-     * method executed on the thread that periodically searches for 
-     * zombie connections
-     * 
-     * @param evt unused
-     */
-    @Override
-    public void actionPerformed(ActionEvent evt) {
-        // wait until we can acquire lock on this table
-        // determine time at which we give up on a connection
-        Calendar now = Calendar.getInstance();
-        now.add(Calendar.SECOND,-zombieDelay);
-        Date presumedDead = new Date(now.getTimeInMillis());
-        Iterator<Map.Entry<Integer,Connection>> ix = table.entrySet().iterator();
-        while (ix.hasNext()) {
-            Map.Entry<Integer,Connection> entry = ix.next();
-            if (entry.getValue().lastKeepaliveReceived.compareTo(presumedDead)<0) {
-                entry.getValue().changeState(ConnectionState.ZOMBIE);
-                // TODO: notify (abort connect, both sides of a match, signal match termination for logging
-            }
-        }
-    }
-    
-    private static HashMap<Integer,Connection> table = null;
     private static ConnectionTable _instance = null;
     
-    public static ConnectionTable getInstance()
+    public static synchronized ConnectionTable getInstance()
     {
         if (_instance==null) {
             _instance = new ConnectionTable();
@@ -115,7 +85,8 @@ public class ConnectionTable
         l.entering("ConnectionTable","addPlayer");
         
         // remove old entry if a duplicate
-        Connection duplicatePlayer = findPlayer( player.getTeamName(), player.getOrigin());
+        String key = indexKey( player.getTeamName(), player.getOrigin() );
+        Connection duplicatePlayer = index.get( key );
         if (duplicatePlayer!=null)
         {
             l.log(Level.FINE, "removing duplicate first");
@@ -127,14 +98,43 @@ public class ConnectionTable
         if (table.size()>MAX_CONNECTIONS)
             return null;
         
-        // now add in the new guy
+        // now add in the new guy; if another registration for the same 
+        // team and origin raced in ahead of us, the later one wins
         table.put(player.getID(),player);
+        count(player,true);
+        reaper.track(player);
+        Connection raced = index.put(key,player);
+        if (raced!=null && raced!=player && raced!=duplicatePlayer) {
+            try { raced.terminateConnection(E_REDUNDANT_PLAYER); } catch (Exception e) {}
+            reaper.untrack(raced);
+            if (table.remove(raced.getID(),raced)) {
+                count(raced,false);
+                notifyListeners( new ListAction(ListAction.Action.REMOVE, new PlayerEntry(raced) ));
+            }
+        }
         l.log(Level.INFO, "adding player {0}", player );
         notifyListeners( new ListAction( ListAction.Action.ADD, new PlayerEntry(player)) );
+        RecoveryLog.playerJoined( player );
 
         return (IConnection)player;
     }
     
+    /**
+     * Give a registering client back its connection, if the server was 
+     * recovered after a crash and this team, from this origin, had one.
+     * 
+     * @param response the returning client's callbacks
+     * @return the connection, or null if there is none to give back
+     */
+    Connection reclaimPlayer( String teamName, String origin, IResponse response )
+    {
+        Connection player = index.get( indexKey(teamName,origin) );
+        if (player==null || !player.reattach(response))
+            return null;
+        l.log(Level.INFO, "player returned after recovery: {0}", player );
+        return player;
+    }
+    
     /**
      * Find an instance of a player in the connection table, probably 
      * a duplicate, since we're only looking if we have complete information 
@@ -147,16 +147,16 @@ public class ConnectionTable
      */
     public Connection findPlayer( String teamName, String origin )
     {
-        // iterate through the table (ugly!) to find an exact match
-        Iterator i = table.entrySet().iterator();
-        while (i.hasNext()) 
-        {
-            Map.Entry pair = (Map.Entry) i.next();
-            Connection player = (Connection)pair.getValue();
-            if (player.getTeamName().equals(teamName) && player.getOrigin().equals(origin))
-                return player;
-        }
-        return null;
+        return index.get( indexKey(teamName,origin) );
+    }
+    
+    /**
+     * Build the secondary index key for a team name and origin.  (NUL 
+     * never appears in a host address, so keys cannot collide.)
+     */
+    private static String indexKey( String teamName, String origin )
+    {
+        return teamName + '\0' + origin;
     }
     
     /**
@@ -169,53 +169,231 @@ public class ConnectionTable
     {
         l.entering("ConnectionTable","removePlayer");
         
-        table.remove( player.getID() );
+        // only remove the entries that are still this player: a 
+        // re-registration may already have replaced it
+        if (!table.remove( player.getID(), player ))
+            return;
+        count(player,false);
+        reaper.untrack(player);
+        index.remove( indexKey(player.getTeamName(),player.getOrigin()), player );
         notifyListeners( new ListAction(ListAction.Action.REMOVE, new PlayerEntry(player) ));
+        RecoveryLog.playerLeft( player );
     }
     
     /**
+     * @return every player in the table (a live view)
+     */
+    Collection<Connection> getPlayers()
+    {
+        return table.values();
+    }
+    
+    /**
+     * Return the whole table.  The list is rebuilt only when the table has 
+     * changed since the last call; callers share it and must not modify it.
      * 
-     * @param filter
-     * @param inquirer
-     * @param listener
-     * @return 
+     * @param inquirer the connection asking, or null for administration
+     * @return every player in the table
      */
     public ArrayList<PlayerEntry> getPlayerList( 
             Connection inquirer )
     {
         l.entering("ConnectionTable","getPlayerList");
         
-        ArrayList<PlayerEntry> list = new ArrayList<PlayerEntry>();
-        Iterator i = table.entrySet().iterator();
-        while (i.hasNext()) {
-            Map.Entry pair  = (Map.Entry)i.next();
-            int id = (Integer)pair.getKey();
-            Connection player = (Connection)pair.getValue();
-            PlayerEntry e = new PlayerEntry( player.getTeamName(), player.getOrigin(), id, player.getState() );
+        synchronized (changeLog) {
+            if (cachedList==null || cachedListVersion!=version) {
+                cachedList = buildPlayerList();
+                cachedListVersion = version;
+            }
+            return cachedList;
+        }
+    }
+    
+    /**
+     * @return the players now available for play, in order of team name
+     */
+    ArrayList<Connection> getAvailablePlayers()
+    {
+        ArrayList<Connection> players = new ArrayList<Connection>();
+        for (Connection player : table.values())
+            if (player.getState()==ConnectionState.AVAILABLE_FOR_PLAY)
+                players.add(player);
+        Collections.sort( players, new Comparator<Connection>() {
+            @Override
+            public int compare( Connection a, Connection b ) {
+                return a.getTeamName().compareTo( b.getTeamName() );
+            }
+        });
+        return players;
+    }
+    
+    private ArrayList<PlayerEntry> buildPlayerList()
+    {
+        ArrayList<PlayerEntry> list = new ArrayList<PlayerEntry>(table.size());
+        for (Map.Entry<Integer,Connection> pair : table.entrySet()) {
+            Connection player = pair.getValue();
+            PlayerEntry e = new PlayerEntry( player.getTeamName(), player.getOrigin(), pair.getKey(), player.getState() );
             list.add(e);
         }
         return list;
     }
     
+    /**
+     * Return the changes to the table since the given version, or a full 
+     * snapshot if the caller is too far behind (or is just starting, with 
+     * a version of zero).
+     * 
+     * @param since the version from the caller's last delta
+     * @return the changes since that version
+     */
+    public PlayerListDelta getPlayerListSince( long since )
+    {
+        l.entering("ConnectionTable","getPlayerListSince",since);
+        
+        synchronized (changeLog) {
+            if (since<=0 || since>version || version-since>CHANGE_LOG_SIZE)
+                return PlayerListDelta.snapshot( version, getPlayerList(null) );
+            ArrayList<ListAction> changes = new ArrayList<ListAction>((int)(version-since));
+            for (long v=since+1; v<=version; v++)
+                changes.add( changeLog[(int)(v%CHANGE_LOG_SIZE)] );
+            return PlayerListDelta.changes( version, changes );
+        }
+    }
+    
+    public long getVersion()
+    {
+        synchronized (changeLog) {
+            return version;
+        }
+    }
+    
+    /* ******************************
+     * STATE COUNTS
+     * ****************************** */
+    
+    /**
+     * players in the table, by ConnectionState ordinal
+     */
+    private final AtomicIntegerArray stateCounts 
+            = new AtomicIntegerArray( ConnectionState.values().length );
+    
+    /**
+     * Count a player in (or out of) the table's state counts.  Under the 
+     * player's lock, so that it cannot change state meanwhile.
+     */
+    private void count( Connection player, boolean in )
+    {
+        synchronized (player) {
+            if (player.counted==in)
+                return;
+            player.counted = in;
+            stateCounts.addAndGet( player.getState().ordinal(), in ? 1 : -1 );
+        }
+    }
+    
+    /**
+     * Move a counted player from one state's count to another's.  Called 
+     * with the player locked.
+     */
+    void stateChanged( ConnectionState oldState, ConnectionState newState )
+    {
+        stateCounts.decrementAndGet( oldState.ordinal() );
+        stateCounts.incrementAndGet( newState.ordinal() );
+    }
+    
+    private int countOf( ConnectionState state )
+    {
+        return stateCounts.get( state.ordinal() );
+    }
+    
+    @Override
+    public int getConnectionCount()
+    {
+        int n = 0;
+        for (int i=0; i<stateCounts.length(); i++)
+            n += stateCounts.get(i);
+        return n;
+    }
+    
+    @Override
+    public int getAvailableCount()
+    {
+        return countOf( ConnectionState.AVAILABLE_FOR_PLAY );
+    }
+    
+    @Override
+    public int getRequestInProgressCount()
+    {
+        return countOf( ConnectionState.REQUEST_IN_PROGRESS );
+    }
+    
+    @Override
+    public int getInPlayCount()
+    {
+        return countOf( ConnectionState.MATCH_IN_PLAY );
+    }
+    
+    @Override
+    public int getZombieCount()
+    {
+        return countOf( ConnectionState.ZOMBIE );
+    }
+    
+    @Override
+    public int getAdministrativeCount()
+    {
+        return countOf( ConnectionState.ADMINISTRATIVE );
+    }
+    
+    /* ******************************
+     * VERSIONED CHANGE LOG
+     * ****************************** */
+    
+    /**
+     * number of recent changes kept for delta retrieval; clients further 
+     * behind than this get a full snapshot
+     */
+    static final int CHANGE_LOG_SIZE = 1024;
+    
+    /**
+     * ring of the most recent changes, indexed by version; also the lock 
+     * guarding version, the ring and the cached list
+     */
+    private final ListAction[] changeLog = new ListAction[CHANGE_LOG_SIZE];
+    private long version = 0;
+    private ArrayList<PlayerEntry> cachedList = null;
+    private long cachedListVersion = -1;
+    
     /* *************************
      * LISTENER HELPER FUNCTIONS
      * ************************* */
     
-    private ArrayList<IPlayerListListener> listeners = new ArrayList<IPlayerListListener>();
+    /**
+     * listener events are delivered asynchronously, one queue and worker 
+     * per listener, so no state change ever waits on a client
+     */
+    private final PlayerListDispatcher dispatcher = new PlayerListDispatcher();
     
     void addListener( IPlayerListListener listener ) {
         if (listener!=null)
-            listeners.add(listener);
+            dispatcher.addListener(listener);
     }
     void removeListener( IPlayerListListener listener ) {
-        listeners.remove(listener);
+        if (listener!=null)
+            dispatcher.removeListener(listener);
     }
+    /**
+     * Record a change to the table under the next version, and send it 
+     * to every listener.  (Publishing under the lock keeps each listener's 
+     * events in version order; it never blocks.)
+     * 
+     * @param event the change just made to the table
+     */
     public void notifyListeners( ListAction event ) {
-        for ( IPlayerListListener listener : listeners )
-            try {
-                listener.notifyAction(event);
-            } catch (Exception e) {
-                l.log(Level.WARNING, "error sending ListAction",e);
-            }
+        synchronized (changeLog) {
+            event.version = ++version;
+            changeLog[(int)(version%CHANGE_LOG_SIZE)] = event;
+            dispatcher.publish(event);
+        }
     }
 }
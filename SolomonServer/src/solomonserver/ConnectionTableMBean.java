@@ -0,0 +1,24 @@
+package solomonserver;
+
+/**
+ * The connection table, as seen through JMX: how many players are
+ * connected, and in what state.  Every count is kept as players come,
+ * go and change state, so reading one costs nothing.
+ */
+public interface ConnectionTableMBean {
+
+    int getConnectionCount();
+
+    int getAvailableCount();
+
+    int getRequestInProgressCount();
+
+    int getInPlayCount();
+
+    /**
+     * @return players whose clients have gone silent, not yet reaped
+     */
+    int getZombieCount();
+
+    int getAdministrativeCount();
+}
@@ -0,0 +1,205 @@
+package solomonserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A knockout tournament: single elimination (a player is out after one
+ * loss) or double elimination (after two).
+ *
+ * The bracket is drawn a round at a time, as the previous round ends.
+ * Players with no losses meet each other in the winners' bracket; players
+ * with one loss (in double elimination) meet each other in the losers'
+ * bracket; both brackets' matches run at once.  When one player is left
+ * in each bracket, they meet in the final, and if the winners' bracket
+ * player loses it (so both have one loss), once more.  Seeds are the
+ * order of entry.
+ *
+ * The first round is filled out to a power of two with byes, to the best
+ * seeds, so the winners' bracket is never odd again.  An odd player out of
+ * the losers' bracket gets a bye if it has not had one, the best seed
+ * first; if every player in the bracket has had one, the worst seed sits
+ * the round out, uncredited.  So no player gets two byes.
+ *
+ * A drawn match goes to the better seed.  The field halves each round, so
+ * a thousand players finish in about ten rounds (or twenty, with double
+ * elimination).
+ */
+class EliminationTournament extends Tournament {
+
+    /**
+     * losses that put a player out: 1 or 2
+     */
+    private final int lives;
+
+    /**
+     * losses so far, and the seeds (order of entry); guarded by the
+     * tournament
+     */
+    private final HashMap<Connection,Integer> losses = new HashMap<Connection,Integer>();
+    private final HashMap<Connection,Integer> seeds = new HashMap<Connection,Integer>();
+
+    /**
+     * the round in which each eliminated player went out
+     */
+    private final HashMap<Connection,Integer> eliminatedIn = new HashMap<Connection,Integer>();
+
+    private final Set<Connection> hadBye = new HashSet<Connection>();
+
+    /**
+     * players not yet eliminated, best seed first
+     */
+    private final List<Connection> alive;
+
+    private final LinkedList<Pairing> pending = new LinkedList<Pairing>();
+    private int round = 0;
+    
+    /**
+     * true once the champion of the winners' bracket has lost the final,
+     * and it must be played again
+     */
+    private boolean replay = false;
+
+    /**
+     * @param doubleElimination true if a player is out after two losses,
+     * not one
+     */
+    EliminationTournament( List<Connection> entrants, boolean doubleElimination, int roundsPerMatch, int parallelism ) {
+        super( doubleElimination ? "double elimination" : "single elimination",
+               entrants, roundsPerMatch, parallelism );
+        this.lives = doubleElimination ? 2 : 1;
+        this.alive = new ArrayList<Connection>( entrants );
+        for (int i=0; i<entrants.size(); i++) {
+            losses.put( entrants.get(i), 0 );
+            seeds.put( entrants.get(i), i );
+        }
+    }
+
+    @Override
+    protected Pairing nextPairing( Set<Connection> busy ) {
+        if (pending.isEmpty() && busy.isEmpty())
+            drawRound();
+        return pending.poll();
+    }
+
+    @Override
+    protected int getScheduledMatches() {
+        // every match puts a loss on someone: every player but the
+        // champion takes all its lives, and the champion at most one more
+        return Math.max( 0, lives*(entrants.size()-1) ) + (replay ? 1 : 0);
+    }
+
+    @Override
+    protected void matchFinished( Pairing p ) {
+        Connection loser;
+        if (p.played && p.score1==p.score2)
+            loser = seeds.get(p.player1)<seeds.get(p.player2) ? p.player2 : p.player1;
+        else
+            loser = p.getWinner()==p.player1 ? p.player2 : p.player1;
+        int n = losses.get(loser) + 1;
+        losses.put( loser, n );
+        if (n>=lives) {
+            alive.remove( loser );
+            eliminatedIn.put( loser, round );
+        }
+    }
+
+    /**
+     * Draw the next round: pair each bracket among itself, or the two
+     * bracket champions against each other.
+     */
+    private void drawRound() {
+        List<Connection> winners = new ArrayList<Connection>();
+        List<Connection> losers = new ArrayList<Connection>();
+        for (Connection player : alive) {
+            if (losses.get(player)==0)
+                winners.add( player );
+            else
+                losers.add( player );
+        }
+        if (winners.size()+losers.size()<2)
+            return;
+
+        round++;
+        if (winners.size()<=1 && losers.size()<=1) {
+            pending.add( new Pairing( winners.isEmpty() ? losers.get(0) : winners.get(0),
+                                      losers.isEmpty() ? winners.get(0) : losers.get(0) ) );
+            return;
+        }
+        if (winners.isEmpty() && losers.size()==2 && lives==2)
+            replay = true;
+        pairBracket( winners );
+        pairBracket( losers );
+    }
+
+    /**
+     * Pair a bracket's players, best seed against worst, after taking out
+     * those who get a bye: enough of the best seeds to make a power of two
+     * in the first round, and afterwards, with an odd number, the best
+     * seed who has not had a bye.  A bracket of one waits for the other,
+     * and is not credited with a bye.
+     */
+    private void pairBracket( List<Connection> bracket ) {
+        if (bracket.size()<2)
+            return;
+        List<Connection> players = new ArrayList<Connection>( bracket );
+        int byes = players.size()%2;
+        if (round==1) {
+            int size = 1;
+            while (size<players.size())
+                size <<= 1;
+            byes = size - players.size();
+        }
+        for (int i=0; i<byes; i++) {
+            int bye = 0;
+            while (bye<players.size() && hadBye.contains( players.get(bye) ))
+                bye++;
+            if (bye==players.size()) {
+                // everyone has had one: the worst seed waits, uncredited
+                players.remove( players.size()-1 );
+                continue;
+            }
+            Connection player = players.remove( bye );
+            hadBye.add( player );
+            awardBye( player );
+        }
+        int lo = 0;
+        int hi = players.size() - 1;
+        while (lo<hi)
+            pending.add( new Pairing( players.get(lo++), players.get(hi--) ) );
+    }
+
+    /**
+     * The champion first, then in order of how long each player lasted,
+     * and among those who went out in the same round, by the standings.
+     */
+    @Override
+    protected synchronized List<Connection> getRanking() {
+        List<Connection> ranking = super.getRanking();
+        final HashMap<Connection,Integer> place = new HashMap<Connection,Integer>();
+        for (int i=0; i<ranking.size(); i++)
+            place.put( ranking.get(i), i );
+        Collections.sort( ranking, new Comparator<Connection>() {
+            @Override
+            public int compare( Connection a, Connection b ) {
+                int outA = lastedUntil(a);
+                int outB = lastedUntil(b);
+                if (outA!=outB)
+                    return outB - outA;
+                return place.get(a) - place.get(b);
+            }
+        });
+        return ranking;
+    }
+
+    private int lastedUntil( Connection player ) {
+        Integer out = eliminatedIn.get( player );
+        return out==null ? Integer.MAX_VALUE : out;
+    }
+}
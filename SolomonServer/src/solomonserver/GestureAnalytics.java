@@ -0,0 +1,297 @@
+package solomonserver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How each team plays, counted live from every resolved round: how often
+ * it throws each gesture, how that changes after it wins, loses or ties a
+ * round, and how long its winning and losing streaks run.
+ *
+ * Each match keeps a MatchTracker, with a plain array of counters for each
+ * of its two teams, so a round costs an uncontended lock and a few
+ * increments, shares no memory with any other match, and allocates
+ * nothing.  When the match ends, its counters are added to its teams'
+ * totals.  A query adds up a team's totals and the counters of its
+ * matches still in play, so it is live to the latest round.  With
+ * -Dsolomon.analytics=off no tracker is made, and rounds cost nothing.
+ *
+ * Teams are counted by team name, only as long as the server runs.
+ */
+final class GestureAnalytics {
+
+    static final boolean ENABLED = !"off".equalsIgnoreCase( System.getProperty("solomon.analytics") );
+
+    /**
+     * contexts of a gesture: the team's result in the previous round of
+     * the same match, if there was one
+     */
+    static final int FIRST_ROUND = 0;
+    static final int AFTER_WIN   = 1;
+    static final int AFTER_LOSS  = 2;
+    static final int AFTER_TIE   = 3;
+    static final int CONTEXTS    = 4;
+
+    private static final int GESTURES = Gesture.values().length;
+
+    /**
+     * longest streak counted by its own length; longer ones are counted
+     * with it
+     */
+    static final int MAX_STREAK = 32;
+
+    /*
+     * Layout of a team's counters: gestures thrown, by context and gesture
+     * [context*GESTURES + ordinal]; rounds won, lost and tied; streaks ended
+     * by length, won then lost; and the longest streaks won and lost.
+     */
+    private static final int WON          = CONTEXTS*GESTURES;
+    private static final int LOST         = WON + 1;
+    private static final int TIED         = WON + 2;
+    private static final int WIN_STREAKS  = WON + 3;
+    private static final int LOSS_STREAKS = WIN_STREAKS + MAX_STREAK + 1;
+    private static final int LONGEST_WIN  = LOSS_STREAKS + MAX_STREAK + 1;
+    private static final int LONGEST_LOSS = LONGEST_WIN + 1;
+    private static final int COUNTERS     = LONGEST_LOSS + 1;
+
+    private static final GestureAnalytics _instance = new GestureAnalytics();
+
+    static GestureAnalytics getInstance() {
+        return _instance;
+    }
+
+    private GestureAnalytics() {}
+
+    private final ConcurrentHashMap<String,Team> teams = new ConcurrentHashMap<String,Team>();
+
+    /**
+     * One team's totals from its finished matches, and its matches in
+     * play; guarded by the Team
+     */
+    private static final class Team {
+        final String teamName;
+        final long[] totals = new long[COUNTERS];
+        final Set<MatchTracker> inPlay = new HashSet<MatchTracker>();
+
+        Team( String teamName ) {
+            this.teamName = teamName;
+        }
+    }
+
+    private Team team( String teamName ) {
+        Team t = teams.get( teamName );
+        if (t==null) {
+            Team created = new Team( teamName );
+            t = teams.putIfAbsent( teamName, created );
+            if (t==null)
+                t = created;
+        }
+        return t;
+    }
+
+    /**
+     * @return a tracker for a new match's rounds, or null if analytics
+     * are off
+     */
+    MatchTracker track( Connection player1, Connection player2 ) {
+        if (!ENABLED)
+            return null;
+        return new MatchTracker( team( player1.getTeamName() ), team( player2.getTeamName() ) );
+    }
+
+    /**
+     * Counts one match's rounds for its two teams, keeping what each needs
+     * to know about the match so far: its result in the previous round,
+     * and its current streak.  Guarded by the tracker.
+     */
+    static final class MatchTracker {
+        private final Team team1;
+        private final Team team2;
+        private final long[] counts1 = new long[COUNTERS];
+        private final long[] counts2 = new long[COUNTERS];
+        private int context1 = FIRST_ROUND;
+        private int context2 = FIRST_ROUND;
+
+        /**
+         * current streak: rounds won in a row, or (negative) lost in a row
+         */
+        private int streak1 = 0;
+        private int streak2 = 0;
+
+        /**
+         * entered in the teams' matches in play (at the first round, so a
+         * match refused is never entered), then taken out at the end
+         */
+        private boolean entered = false;
+        private boolean over = false;
+
+        private MatchTracker( Team team1, Team team2 ) {
+            this.team1 = team1;
+            this.team2 = team2;
+        }
+
+        /**
+         * Count a resolved round.  A null gesture is given as NONE's
+         * ordinal, and counted and scored as NONE, as the match scores it.
+         *
+         * @param g1 player one's gesture ordinal
+         * @param g2 player two's gesture ordinal
+         */
+        synchronized void round( int g1, int g2 ) {
+            if (!entered)
+                enter();
+            counts1[context1*GESTURES + g1]++;
+            counts2[context2*GESTURES + g2]++;
+            switch (Match.winnerOf( g1, g2 )) {
+                case Match.P1_WINS:
+                    counts1[WON]++;
+                    counts2[LOST]++;
+                    context1 = AFTER_WIN;
+                    context2 = AFTER_LOSS;
+                    streak1 = won( counts1, streak1 );
+                    streak2 = lost( counts2, streak2 );
+                    break;
+                case Match.P2_WINS:
+                    counts1[LOST]++;
+                    counts2[WON]++;
+                    context1 = AFTER_LOSS;
+                    context2 = AFTER_WIN;
+                    streak1 = lost( counts1, streak1 );
+                    streak2 = won( counts2, streak2 );
+                    break;
+                default:
+                    counts1[TIED]++;
+                    counts2[TIED]++;
+                    context1 = context2 = AFTER_TIE;
+                    streakEnded( counts1, streak1 );
+                    streakEnded( counts2, streak2 );
+                    streak1 = streak2 = 0;
+                    break;
+            }
+        }
+
+        private void enter() {
+            entered = true;
+            synchronized (team1) {
+                team1.inPlay.add( this );
+            }
+            synchronized (team2) {
+                team2.inPlay.add( this );
+            }
+        }
+
+        private static int won( long[] counts, int streak ) {
+            if (streak>=0)
+                return streak+1;
+            streakEnded( counts, streak );
+            return 1;
+        }
+
+        private static int lost( long[] counts, int streak ) {
+            if (streak<=0)
+                return streak-1;
+            streakEnded( counts, streak );
+            return -1;
+        }
+
+        private static void streakEnded( long[] counts, int streak ) {
+            if (streak>0) {
+                counts[WIN_STREAKS + Math.min( streak, MAX_STREAK )]++;
+                counts[LONGEST_WIN] = Math.max( counts[LONGEST_WIN], streak );
+            }
+            else if (streak<0) {
+                counts[LOSS_STREAKS + Math.min( -streak, MAX_STREAK )]++;
+                counts[LONGEST_LOSS] = Math.max( counts[LONGEST_LOSS], -streak );
+            }
+        }
+
+        /**
+         * Count the streaks still running, and add the match's counters
+         * to its teams' totals.
+         */
+        synchronized void matchOver() {
+            if (over || !entered)
+                return;
+            over = true;
+            streakEnded( counts1, streak1 );
+            streakEnded( counts2, streak2 );
+            synchronized (team1) {
+                team1.inPlay.remove( this );
+                addTo( team1.totals, counts1 );
+            }
+            synchronized (team2) {
+                team2.inPlay.remove( this );
+                addTo( team2.totals, counts2 );
+            }
+        }
+
+        /**
+         * Add the counters for one of the teams, with its streak in
+         * progress, to a sum.
+         */
+        synchronized void addCountsTo( Team team, long[] sum ) {
+            long[] counts = team==team1 ? counts1 : counts2;
+            addTo( sum, counts );
+            long[] streak = new long[COUNTERS];
+            streakEnded( streak, team==team1 ? streak1 : streak2 );
+            addTo( sum, streak );
+            // a match with itself counts for the team twice
+            if (team1==team2) {
+                addTo( sum, counts2 );
+                streak = new long[COUNTERS];
+                streakEnded( streak, streak2 );
+                addTo( sum, streak );
+            }
+        }
+    }
+
+    private static void addTo( long[] sum, long[] counts ) {
+        for (int i=0; i<COUNTERS; i++) {
+            if (i==LONGEST_WIN || i==LONGEST_LOSS)
+                sum[i] = Math.max( sum[i], counts[i] );
+            else
+                sum[i] += counts[i];
+        }
+    }
+
+    /**
+     * @return a team's counters as of now, or null if it has played no
+     * round
+     */
+    TeamAnalytics getTeamAnalytics( String teamName ) {
+        Team t = teams.get( teamName );
+        if (t==null)
+            return null;
+        long[] c = new long[COUNTERS];
+        ArrayList<MatchTracker> inPlay;
+        synchronized (t) {
+            addTo( c, t.totals );
+            inPlay = new ArrayList<MatchTracker>( t.inPlay );
+        }
+        for (MatchTracker m : inPlay)
+            m.addCountsTo( t, c );
+
+        TeamAnalytics a = new TeamAnalytics();
+        a.teamName   = t.teamName;
+        a.roundsWon  = c[WON];
+        a.roundsLost = c[LOST];
+        a.roundsTied = c[TIED];
+        a.gestures   = new long[GESTURES];
+        a.gesturesInContext = new long[CONTEXTS][GESTURES];
+        for (int ctx=0; ctx<CONTEXTS; ctx++) {
+            for (int g=0; g<GESTURES; g++) {
+                a.gesturesInContext[ctx][g] = c[ctx*GESTURES + g];
+                a.gestures[g] += c[ctx*GESTURES + g];
+            }
+        }
+        a.winStreaks  = new long[MAX_STREAK+1];
+        a.lossStreaks = new long[MAX_STREAK+1];
+        System.arraycopy( c, WIN_STREAKS,  a.winStreaks,  0, MAX_STREAK+1 );
+        System.arraycopy( c, LOSS_STREAKS, a.lossStreaks, 0, MAX_STREAK+1 );
+        a.longestWinStreak  = (int)c[LONGEST_WIN];
+        a.longestLossStreak = (int)c[LONGEST_LOSS];
+        return a;
+    }
+}
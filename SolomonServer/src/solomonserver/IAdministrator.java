@@ -13,6 +13,9 @@ public interface IAdministrator extends Remote
     ArrayList<PlayerEntry> getPlayerList()
             throws RemoteException;
     
+    PlayerListDelta getPlayerListSince( long version )
+            throws RemoteException;
+    
     void addPlayerListListener( IPlayerListListener listener ) 
             throws RemoteException;
     
@@ -25,7 +28,127 @@ public interface IAdministrator extends Remote
     void killConnection( int PlayerID )
             throws RemoteException;
     
-    void killMatch( int matchID )
+    /**
+     * @param inPlayOnly true for only the matches now in play; false to 
+     * include the latest finished ones, too
+     * @return the matches, with their IDs
+     * @throws RemoteException 
+     */
+    ArrayList<MatchEntry> getMatchList( boolean inPlayOnly )
+            throws RemoteException;
+    
+    /**
+     * End a match in play, telling both players it has ended.
+     * 
+     * @param matchID the match, as given by getMatchList()
+     * @return RC_OK; or E_MATCH_ENDED if there is no such match in play 
+     * (the ID is unknown, or the match is already over)
+     * @throws RemoteException 
+     */
+    ResultCode killMatch( int matchID )
+            throws RemoteException;
+    
+    /**
+     * @return counts of the dead connections, matches and remote objects 
+     * the zombie reaper has reclaimed
+     * @throws RemoteException 
+     */
+    ReaperReport getReaperReport()
+            throws RemoteException;
+    
+    /**
+     * Start a round-robin tournament among the players now available for 
+     * play.
+     * 
+     * @param roundsPerMatch rounds in each match
+     * @param parallelism the most matches in play at once, or 0 to play 
+     * as many at once as the players and the server's processors allow
+     * @return RC_OK; E_WRONG_STATE if a tournament is already in progress; 
+     * or RC_REQUEST_DENIED if fewer than two players are available
+     * @throws RemoteException 
+     */
+    ResultCode startRoundRobin( int roundsPerMatch, int parallelism )
+            throws RemoteException;
+    
+    /**
+     * Start a Swiss tournament among the players now available for play.
+     * 
+     * @param numberOfRounds tournament rounds, or 0 for log2 of the number 
+     * of players, rounded up
+     * @param roundsPerMatch rounds in each match
+     * @param parallelism the most matches in play at once, or 0 for as many 
+     * as the players and the server's processors allow
+     * @return as startRoundRobin()
+     * @throws RemoteException 
+     */
+    ResultCode startSwiss( int numberOfRounds, int roundsPerMatch, int parallelism )
+            throws RemoteException;
+    
+    /**
+     * Start a single or double elimination tournament among the players 
+     * now available for play, seeded in order of team name.
+     * 
+     * @param doubleElimination true if a player is out after two losses, 
+     * not one
+     * @param roundsPerMatch rounds in each match
+     * @param parallelism the most matches in play at once, or 0 for as many 
+     * as the players and the server's processors allow
+     * @return as startRoundRobin()
+     * @throws RemoteException 
+     */
+    ResultCode startElimination( boolean doubleElimination, int roundsPerMatch, int parallelism )
+            throws RemoteException;
+    
+    /**
+     * @return the progress and standings of the current (or latest) 
+     * tournament, or null if there has been none
+     * @throws RemoteException 
+     */
+    TournamentReport getTournamentReport()
+            throws RemoteException;
+    
+    /**
+     * @param k how many teams
+     * @return the k highest rated teams, best first
+     * @throws RemoteException 
+     */
+    ArrayList<RatingEntry> getLeaderboard( int k )
+            throws RemoteException;
+    
+    /**
+     * @param teamName the team
+     * @return the team's rating and rank, or null if it has not played a 
+     * rated match
+     * @throws RemoteException 
+     */
+    RatingEntry getRating( String teamName )
+            throws RemoteException;
+    
+    /**
+     * @param teamName the team
+     * @return how the team has played: its gesture frequencies, alone and 
+     * after winning, losing or tying a round, and its streaks; or null if 
+     * it has played no round
+     * @throws RemoteException 
+     */
+    TeamAnalytics getTeamAnalytics( String teamName )
+            throws RemoteException;
+    
+    /**
+     * @return the latency, as timed on the server, of each call clients 
+     * make and each callback the server makes to them, since the server 
+     * started or the last resetLatencies()
+     * @throws RemoteException 
+     */
+    ArrayList<LatencySummary> getLatencies()
+            throws RemoteException;
+    
+    /**
+     * Start timing calls afresh.
+     * 
+     * @throws RemoteException 
+     */
+    void resetLatencies()
             throws RemoteException;
 
 }
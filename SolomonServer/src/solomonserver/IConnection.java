@@ -30,9 +30,67 @@ public interface IConnection extends Remote {
     Scorecard getScorecard() 
             throws RemoteException;
     
+    /**
+     * Like getScorecard(), but instead of returning E_IN_GAME_MODE while 
+     * the opponent has yet to gesture, waits on the server for the round 
+     * to resolve.
+     * 
+     * @param round the round whose result is wanted (the roundsPlayed it 
+     * will report), or 0 for whichever round is in progress
+     * @param timeoutMillis the longest to wait
+     * @return the scorecard; on timeout, as getScorecard() would return it
+     * @throws RemoteException 
+     */
+    Scorecard awaitScorecard( int round, long timeoutMillis ) 
+            throws RemoteException;
+    
+    /**
+     * Play one round in a single call: the equivalent of doGesture() 
+     * followed by awaitScorecard() for that round.  If the opponent has 
+     * not yet collected the previous round's result, the gesture waits 
+     * for it rather than failing with E_IN_INFO_MODE.
+     * 
+     * @param g this player's gesture
+     * @param timeoutMillis the longest to wait, overall
+     * @return the scorecard for the round, whose rc is RC_OK on success 
+     * or else the reason the round could not be played
+     * @throws RemoteException 
+     */
+    Scorecard playRound( Gesture g, long timeoutMillis ) 
+            throws RemoteException;
+    
+    /**
+     * Commit to the gestures for a run of rounds at once, for players 
+     * whose choices don't depend on the opponent's.  The server plays as 
+     * many rounds as both players have committed to in one pass, and 
+     * returns the results in a single block.  Both players must play the 
+     * match this way.
+     * 
+     * @param gestures this player's gestures for its next rounds, in order 
+     * (or none, just to collect results)
+     * @param timeoutMillis the longest to wait for the opponent to commit 
+     * to the same rounds (0 not to wait)
+     * @return the rounds played since this player's previous block
+     * @throws RemoteException 
+     */
+    ScorecardBlock submitGestures( Gesture[] gestures, long timeoutMillis ) 
+            throws RemoteException;
+    
     ArrayList<PlayerEntry> getPlayerList() 
             throws RemoteException;
     
+    /**
+     * Return the changes to the player list since a previous call, or the 
+     * full list if the caller is too far behind.
+     * 
+     * @param version the version from the previous delta, or 0 for a 
+     * full snapshot
+     * @return the changes, and the version to ask from next time
+     * @throws RemoteException 
+     */
+    PlayerListDelta getPlayerListSince( long version )
+            throws RemoteException;
+    
     void addPlayerListListener( IPlayerListListener listener )
             throws RemoteException;
     
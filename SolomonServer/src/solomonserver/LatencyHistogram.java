@@ -0,0 +1,118 @@
+package solomonserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in nanoseconds, to within about 3%.
+ *
+ * Buckets are log-linear: each power of two is split into SUB_BUCKETS
+ * equal buckets, so recording is a shift, a leading-zero count and one
+ * atomic increment, whatever the latency, and the whole range from a
+ * nanosecond to twenty minutes fits in about 600 counters.  Percentiles
+ * are read by walking the buckets.
+ *
+ * Resetting swaps in fresh counters, without stopping anyone recording;
+ * a latency being recorded at that instant may land in either.
+ *
+ * Public, so that clients (the load generator) time calls the same way.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS     = 1<<SUB_BUCKET_BITS;
+
+    /**
+     * largest latency told apart from the rest (about 20 minutes)
+     */
+    private static final int  MAX_EXPONENT = 40;
+    private static final long MAX_VALUE    = (1L<<(MAX_EXPONENT+1)) - 1;
+    private static final int  BUCKETS      = (MAX_EXPONENT-SUB_BUCKET_BITS+2) * SUB_BUCKETS;
+
+    private static final class Counts {
+        final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+        final AtomicLong max = new AtomicLong();
+        final long since = System.currentTimeMillis();
+    }
+
+    private volatile Counts counts = new Counts();
+
+    /**
+     * Record one latency.
+     */
+    public void record( long nanos ) {
+        Counts c = counts;
+        long v = Math.max( 0, Math.min( nanos, MAX_VALUE ) );
+        c.buckets.getAndIncrement( bucketOf(v) );
+        long max;
+        while (v>(max = c.max.get()) && !c.max.compareAndSet( max, v ))
+            ;
+    }
+
+    /**
+     * Start counting afresh.
+     */
+    public void reset() {
+        counts = new Counts();
+    }
+
+    static int bucketOf( long v ) {
+        if (v<SUB_BUCKETS)
+            return (int)v;
+        int exponent = 63 - Long.numberOfLeadingZeros( v );
+        int sub = (int)(v>>>(exponent-SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+        return (exponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest latency that falls in a bucket
+     */
+    static long highestIn( int bucket ) {
+        if (bucket<SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket/SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket%SUB_BUCKETS;
+        return ((SUB_BUCKETS+sub+1)<<(exponent-SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @param name what was timed
+     * @return the count, mean, median, 99th and 99.9th percentiles and the
+     * maximum (percentiles are rounded up to their bucket's top, but no
+     * higher than the maximum)
+     */
+    public LatencySummary summarize( String name ) {
+        Counts c = counts;
+        long[] n = new long[BUCKETS];
+        long total = 0;
+        double sum = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            n[i] = c.buckets.get(i);
+            total += n[i];
+            sum += n[i] * (double)highestIn(i);
+        }
+        LatencySummary s = new LatencySummary();
+        s.name        = name;
+        s.count       = total;
+        s.sinceMillis = c.since;
+        s.maxNanos    = c.max.get();
+        s.meanNanos   = total==0 ? 0 : Math.min( (long)(sum/total), s.maxNanos );
+        s.p50Nanos    = Math.min( percentile( n, total, 0.50 ),  s.maxNanos );
+        s.p99Nanos    = Math.min( percentile( n, total, 0.99 ),  s.maxNanos );
+        s.p999Nanos   = Math.min( percentile( n, total, 0.999 ), s.maxNanos );
+        return s;
+    }
+
+    private static long percentile( long[] n, long total, double p ) {
+        if (total==0)
+            return 0;
+        long rank = (long)Math.ceil( p*total );
+        long seen = 0;
+        for (int i=0; i<n.length; i++) {
+            seen += n[i];
+            if (seen>=rank)
+                return highestIn(i);
+        }
+        return highestIn( n.length-1 );
+    }
+}
@@ -0,0 +1,32 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * The latencies of one operation, as timed on the server, since the
+ * server started or its timings were last reset.  Percentiles (and the
+ * mean) are to within about 3%, rounded up.
+ */
+public class LatencySummary implements Serializable {
+    
+    public String name;
+    public long count;
+    
+    /**
+     * when counting began, in milliseconds since 1970
+     */
+    public long sinceMillis;
+    
+    public long meanNanos;
+    public long p50Nanos;
+    public long p99Nanos;
+    public long p999Nanos;
+    public long maxNanos;
+    
+    @Override
+    public String toString()
+    {
+        return String.format( "%-26s %9d calls  mean %9.1f  p50 %9.1f  p99 %9.1f  p999 %9.1f  max %9.1f us",
+                name, count, meanNanos/1e3, p50Nanos/1e3, p99Nanos/1e3, p999Nanos/1e3, maxNanos/1e3 );
+    }
+}
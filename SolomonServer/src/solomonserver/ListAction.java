@@ -1,11 +1,22 @@
 package solomonserver;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
- *
+ * A change to the connection table, as delivered to player list 
+ * listeners.  Externalizable, written in the compact encodings of 
+ * WireFormat, with its PlayerEntry inline.
  */
-public class ListAction implements Serializable {
+public class ListAction implements Externalizable {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * for deserialization only
+     */
+    public ListAction() {}
     
     public ListAction( Action event, PlayerEntry player ) {
         this.event  = event;
@@ -16,4 +27,28 @@ public class ListAction implements Serializable {
     
     public Action event;
     public PlayerEntry player;
+    
+    /**
+     * version of the connection table after this change was applied
+     */
+    public long version;
+
+    @Override
+    public void writeExternal( ObjectOutput out ) throws IOException {
+        WireFormat.writeOrdinal( out, event );
+        out.writeBoolean( player!=null );
+        if (player!=null)
+            player.writeExternal( out );
+        WireFormat.writeVarLong( out, version );
+    }
+
+    @Override
+    public void readExternal( ObjectInput in ) throws IOException {
+        event = WireFormat.readOrdinal( in, WireFormat.ACTIONS );
+        if (in.readBoolean()) {
+            player = new PlayerEntry();
+            player.readExternal( in );
+        }
+        version = WireFormat.readVarLong( in );
+    }
 }
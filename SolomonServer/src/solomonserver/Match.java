@@ -1,28 +1,85 @@
 package solomonserver;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static solomonserver.Gesture.*;
 import static solomonserver.ResultCode.*;
 
 public class Match
-{ 
+{
     final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    private final Connection player1;
+    private final Connection player2;
     
-    private Connection player1 = null;
-    private Connection player2 = null;
-    
-    private int maxNumberOfRounds = 20;
-    private int player1Score = 0;
-    private int player2Score = 0;
-    private int ties = 0;
-    private int round = 0;
-    
-    private Gesture player1Gesture;
-    private Gesture player2Gesture;
-    
-    private State state = State.BEGIN_ROUND;
+    private static final AtomicInteger nextID = new AtomicInteger();
     
+    /**
+     * unique among the matches since the server started (and, if it was
+     * recovered, the matches before it crashed)
+     */
+    private final int id;
+
+    /**
+     * the most rounds a match may have: round and score counters are
+     * 16-bit fields of the FSM word, with headroom
+     */
+    static final int MAX_ROUNDS = 0x7FFF;
+
+    private final int maxNumberOfRounds;
+
+    /**
+     * counts the match's rounds for its teams' analytics; null if those 
+     * are off
+     */
+    private final GestureAnalytics.MatchTracker analytics;
+
+    /**
+     * The complete FSM state, packed into one word so that every
+     * transition is a single compare-and-set, and every reader sees a
+     * consistent state, round, score and pair of gestures without locking:
+     *
+     *   bits  0- 2  State
+     *   bits  3- 5  player one's gesture (ordinal+1; 0 is none yet)
+     *   bits  6- 8  player two's gesture (ordinal+1; 0 is none yet)
+     *   bits  9-24  round
+     *   bits 25-40  player one's score
+     *   bits 41-56  player two's score
+     *
+     * Ties are not stored: they are the rounds neither player won.  The
+     * transition functions return the next word with the ResultCode of the
+     * transition in bits 57-61.
+     */
+    private final AtomicLong word = new AtomicLong( State.BEGIN_ROUND.ordinal() );
+
+    /**
+     * the FSM word as of the completion of the latest round
+     */
+    private volatile long lastRoundWord = State.BEGIN_ROUND.ordinal();
+
+    private static final int  STATE_SHIFT = 0;
+    private static final int  G1_SHIFT    = 3;
+    private static final int  G2_SHIFT    = 6;
+    private static final int  ROUND_SHIFT = 9;
+    private static final int  P1_SHIFT    = 25;
+    private static final int  P2_SHIFT    = 41;
+    private static final int  RC_SHIFT    = 57;
+    private static final long STATE_MASK  = 0x7L;
+    private static final long G_MASK      = 0x7L;
+    private static final long COUNT_MASK  = 0xFFFFL;
+    private static final long RC_MASK     = 0x1FL;
+    private static final long WORD_MASK   = (1L<<RC_SHIFT) - 1;
+
+    private static final State[]      STATES  = State.values();
+    private static final Gesture[]    GESTURES = Gesture.values();
+    private static final ResultCode[] CODES   = ResultCode.values();
+
     enum State {
         BEGIN_ROUND,   /* initial state: ready for gestures, no pending results */
         P1_GESTURED,   /* Player One has gestured, pending on Player Two */
@@ -33,61 +90,505 @@ public class Match
         BOTH_INFORMED, /* Both players informed of round results, ready to transition to next round */
         GAME_OVER,     /* Terminal state */
     }
-    
+
     public Match( IConnection player1, IConnection player2, int maxNumberOfRounds )
     {
+        this( nextID.incrementAndGet(), player1, player2, maxNumberOfRounds );
+    }
+
+    private Match( int id, IConnection player1, IConnection player2, int maxNumberOfRounds )
+    {
+        this.id = id;
         this.player1 = (Connection)player1;
         this.player2 = (Connection)player2;
-        this.maxNumberOfRounds = maxNumberOfRounds;
+        this.maxNumberOfRounds = Math.min( maxNumberOfRounds, MAX_ROUNDS );
+        this.analytics = GestureAnalytics.getInstance().track( this.player1, this.player2 );
     }
-    
+
+    /**
+     * Rebuild a match recovered after a crash, between rounds, as it stood
+     * when its latest round was resolved.
+     *
+     * @param g1 player one's gesture ordinal in that round
+     * @param g2 player two's gesture ordinal in that round
+     */
+    static Match restore( int id, Connection player1, Connection player2, int maxNumberOfRounds,
+                          int round, int p1Score, int p2Score, int g1, int g2 )
+    {
+        Match match = new Match( id, player1, player2, maxNumberOfRounds );
+        if (round>0) {
+            long w = pack( round>=match.maxNumberOfRounds ? State.GAME_OVER : State.BOTH_INFORMED,
+                           g1, g2, round, p1Score, p2Score );
+            match.word.set( w );
+            match.lastRoundWord = w;
+        }
+        reserveIDs( id );
+        return match;
+    }
+
+    /**
+     * Make sure no new match is given an ID up to this one.
+     */
+    static void reserveIDs( int upTo )
+    {
+        int last;
+        while ((last = nextID.get())<upTo && !nextID.compareAndSet( last, upTo ))
+            ;
+    }
+
+    /**
+     * @return the latest match ID given out
+     */
+    static int getLastID()
+    {
+        return nextID.get();
+    }
+
+    /**
+     * @return how the match stood when its latest round was resolved: 
+     * the round, both players' scores, and both gesture ordinals (-1 
+     * before the first round)
+     */
+    int[] getProgress()
+    {
+        long w = lastRoundWord;
+        Gesture g1 = gesture1Of(w);
+        Gesture g2 = gesture2Of(w);
+        return new int[] { roundOf(w), p1ScoreOf(w), p2ScoreOf(w), 
+                           g1==null ? -1 : g1.ordinal(), g2==null ? -1 : g2.ordinal() };
+    }
+
+    public int getID() {
+        return id;
+    }
+
     Connection getPlayer1() {
         return player1;
     }
-    
+
     Connection getPlayer2() {
         return player2;
     }
-    
-    public synchronized Scorecard getScorecard( Connection caller )
+
+    int getMaxRounds() {
+        return maxNumberOfRounds;
+    }
+
+    public Scorecard getScorecard( Connection caller )
     {
         l.entering( "Match","getScorecard");
-        
+
         PlayerSelector sel    = whichPlayerCalledUs(caller);
         ResultCode     rc     = RC_OK;
         Scorecard      score  = null;
         EventType      event  = EventType.UNKNOWN_COMM;
-        
+
         switch (sel)
         {
             case PLAYER1: event = EventType.P1_QUERY;  break;
             case PLAYER2: event = EventType.P2_QUERY;  break;
         }
-        switch (state) 
-        {
-            case BEGIN_ROUND:   rc = stBeginRound(   event, NONE ); break;
-            case P1_GESTURED:   rc = stP1Gestured(   event, NONE ); break;
-            case P2_GESTURED:   rc = stP2Gestured(   event, NONE ); break;
-            case BOTH_GESTURED: rc = stBothGestured( event, NONE ); break;
-            case P1_INFORMED:   rc = stP1Informed(   event, NONE ); break;
-            case P2_INFORMED:   rc = stP2Informed(   event, NONE ); break;
-            case BOTH_INFORMED: rc = stBothInformed( event, NONE ); break;
-            case GAME_OVER:     rc = stGameOver(     event, NONE ); break;
-        }
-        score = makeScorecard( caller );
+        long current, next;
+        do {
+            current = word.get();
+            long result = transition( current, event, NONE );
+            rc   = CODES[(int)((result>>>RC_SHIFT) & RC_MASK)];
+            next = result & WORD_MASK;
+        } while (next!=current && !word.compareAndSet( current, next ));
+        if (next!=current)
+            changed();
+
+        score = makeScorecard( caller, next );
         score.rc = rc;
-        
+
         if (rc==RC_OK)
             l.log(Level.FINE,"productive scorecard {0}",score);
         return score;
     }
+
+    /**
+     * Wait until the round's result is available to the caller, then 
+     * retrieve the scorecard exactly as getScorecard() does.  The caller 
+     * is parked on the server, instead of polling, while the round is 
+     * still open (while getScorecard() would return E_IN_GAME_MODE).
+     * 
+     * @param caller the player waiting
+     * @param round the round whose result is wanted (its roundsPlayed), 
+     * or 0 for whichever round is currently open
+     * @param timeoutMillis the longest to wait; on timeout, the scorecard 
+     * is returned as it stands (normally with E_IN_GAME_MODE)
+     * @return the scorecard
+     */
+    public Scorecard awaitScorecard( Connection caller, int round, long timeoutMillis )
+    {
+        l.entering( "Match","awaitScorecard");
+        
+        long deadline = System.nanoTime() + timeoutMillis*1000000L;
+        long current;
+        while (!isResolved( current = word.get(), round )) {
+            if (!awaitChange( current, deadline ))
+                break;
+        }
+        return getScorecard( caller );
+    }
+    
+    /**
+     * Play a whole round in one call: make the gesture (waiting, if the 
+     * opponent has yet to collect the previous round's result), wait for 
+     * the opponent's gesture, and return the result, taking the caller 
+     * through BOTH_GESTURED to its INFORMED state just as doGesture() and 
+     * getScorecard() would.
+     * 
+     * @param caller the player
+     * @param g the player's gesture for the round
+     * @param timeoutMillis the longest to wait, overall
+     * @return the scorecard for the round; if the gesture was refused, or 
+     * the opponent did not gesture in time, its rc says why
+     */
+    public Scorecard playRound( Connection caller, Gesture g, long timeoutMillis )
+    {
+        l.entering( "Match","playRound");
+        
+        long deadline = System.nanoTime() + timeoutMillis*1000000L;
+        long result;
+        ResultCode rc;
+        for (;;) {
+            result = gesture( caller, g );
+            rc = CODES[(int)((result>>>RC_SHIFT) & RC_MASK)];
+            if (rc!=E_IN_INFO_MODE || !awaitChange( result & WORD_MASK, deadline ))
+                break;
+        }
+        if (rc!=RC_OK) {
+            Scorecard score = makeScorecard( caller, result & WORD_MASK );
+            if (score!=null)
+                score.rc = rc;
+            return score;
+        }
+        
+        // the round we just gestured in: completed by us, or still open
+        long next = result & WORD_MASK;
+        int round = stateOf(next)==State.BOTH_GESTURED ? roundOf(next) : roundOf(next)+1;
+        long current;
+        while (stateOf( current = word.get() )!=State.GAME_OVER && roundOf(current)<round) {
+            if (!awaitChange( current, deadline ))
+                break;
+        }
+        
+        // collect the result, as a query would.  But if our client already 
+        // acknowledged a pushed score, the FSM may have moved past this 
+        // round, so answer from the round's final word instead.
+        switch (stateOf(current)) {
+            case BOTH_GESTURED:
+            case P1_INFORMED:
+            case P2_INFORMED:
+                break;
+            default:
+                long completed = lastRoundWord;
+                if (roundOf(current)>=round && roundOf(completed)==round)
+                    return makeScorecard( caller, completed );
+        }
+        return getScorecard( caller );
+    }
+    
+    /**
+     * Submit a run of gestures for the rounds to come, resolving as many 
+     * of them as both players have committed to in a single pass, and 
+     * return the results the caller has not yet seen, as one block.
+     * 
+     * Rounds resolved this way move the FSM straight from one BOTH_INFORMED 
+     * to the next (or to GAME_OVER): the results are delivered in blocks, 
+     * so nothing is pushed, and no queries are needed.  Batches can only 
+     * be resolved between rounds, so both players should submit their 
+     * gestures this way; rounds played one at a time in between are not 
+     * reported in blocks.
+     * 
+     * @param caller the player
+     * @param gestures gestures for the caller's next rounds, in order (may 
+     * be empty, to collect results); any beyond the end of the match are 
+     * ignored
+     * @param timeoutMillis the longest to wait for the opponent to commit 
+     * to the rounds just submitted (0 to return at once with whatever has 
+     * been resolved)
+     * @return the rounds resolved since the caller's previous block
+     */
+    public ScorecardBlock submitGestures( Connection caller, Gesture[] gestures, long timeoutMillis )
+    {
+        l.entering( "Match","submitGestures");
+        
+        PlayerSelector sel = whichPlayerCalledUs(caller);
+        if (sel==PlayerSelector.UNKNOWN_PLAYER) {
+            ScorecardBlock block = new ScorecardBlock();
+            block.rc = E_UNRECOGNIZED_PLAYER;
+            return block;
+        }
+        boolean isPlayer1 = sel==PlayerSelector.PLAYER1;
+        
+        long deadline = System.nanoTime() + timeoutMillis*1000000L;
+        int target;
+        Connection opponent = isPlayer1 ? player2 : player1;
+        synchronized (batchLock) {
+            target = commit( isPlayer1, gestures );
+            
+            // an in-process opponent commits to as many rounds at once, and 
+            // hears the results directly
+            if (opponent.getStrategy()!=null) {
+                int behind = target - commit( !isPlayer1, null );
+                Gesture[] answers = new Gesture[ Math.max( behind, 0 ) ];
+                for (int i=0; i<answers.length; i++)
+                    answers[i] = ((StrategyConnection)opponent).nextGesture();
+                commit( !isPlayer1, answers );
+                resolveBatch();
+                for (Scorecard score : collect( !isPlayer1 ).getScorecards())
+                    opponent.notifyScore( score );
+            }
+            else
+                resolveBatch();
+        }
+        
+        // wait for the opponent to commit to our rounds; every change of 
+        // the FSM may be the end of a single round that was holding up 
+        // the batch, so try again to resolve
+        long current;
+        while (stateOf( current = word.get() )!=State.GAME_OVER && roundOf(current)<target) {
+            if (!awaitChange( current, deadline ))
+                break;
+            synchronized (batchLock) {
+                resolveBatch();
+            }
+        }
+        
+        synchronized (batchLock) {
+            return collect( isPlayer1 );
+        }
+    }
+    
+    /* *** BATCHED ROUNDS: all guarded by batchLock *** */
+    
+    private final Object batchLock = new Object();
     
+    /**
+     * each player's committed gestures (as ordinals), indexed by round
+     */
+    private byte[] committed1 = null;
+    private byte[] committed2 = null;
+    
+    /**
+     * the rounds each player has committed gestures for, and the rounds 
+     * whose results have been returned to each in a block
+     */
+    private int committedCount1 = 0;
+    private int committedCount2 = 0;
+    private int delivered1 = 0;
+    private int delivered2 = 0;
+    
+    /**
+     * Append a player's gestures to those it has committed.
+     * 
+     * @return the number of rounds the player has now committed to
+     */
+    private int commit( boolean isPlayer1, Gesture[] gestures )
+    {
+        if (committed1==null) {
+            committed1 = new byte[maxNumberOfRounds];
+            committed2 = new byte[maxNumberOfRounds];
+        }
+        byte[] committed = isPlayer1 ? committed1 : committed2;
+        int count        = isPlayer1 ? committedCount1 : committedCount2;
+        int delivered    = isPlayer1 ? delivered1 : delivered2;
+        
+        // if the player has played rounds one at a time since its last 
+        // batch, pick up from the current round
+        int round = roundOf(word.get());
+        if (count<round)
+            count = delivered = round;
+        
+        if (gestures!=null) {
+            for (int i=0; i<gestures.length && count<maxNumberOfRounds; i++) {
+                Gesture g = gestures[i]==null ? NONE : gestures[i];
+                committed[count++] = (byte)g.ordinal();
+            }
+        }
+        
+        if (isPlayer1) {
+            committedCount1 = count;
+            delivered1      = delivered;
+        } else {
+            committedCount2 = count;
+            delivered2      = delivered;
+        }
+        return count;
+    }
+    
+    /**
+     * If the match is between rounds, resolve every round both players 
+     * have committed to, and install the outcome with a single 
+     * compare-and-set.
+     */
+    private void resolveBatch()
+    {
+        if (committed1==null)
+            return;
+        long current, next;
+        do {
+            current = word.get();
+            State state = stateOf(current);
+            if (state!=State.BEGIN_ROUND && state!=State.BOTH_INFORMED)
+                return;
+            int round = roundOf(current);
+            int end = Math.min( committedCount1, committedCount2 );
+            if (end<=round)
+                return;
+            
+            int p1Score = p1ScoreOf(current);
+            int p2Score = p2ScoreOf(current);
+            for (int i=round; i<end; i++) {
+                switch (WINNER[committed1[i]][committed2[i]]) {
+                    case P1_WINS: p1Score++; break;
+                    case P2_WINS: p2Score++; break;
+                }
+            }
+            next = pack( end>=maxNumberOfRounds ? State.GAME_OVER : State.BOTH_INFORMED,
+                         committed1[end-1], committed2[end-1], end, p1Score, p2Score );
+        } while (!word.compareAndSet( current, next ));
+        lastRoundWord = next;
+        for (int i=roundOf(current); i<roundOf(next); i++) {
+            RoundJournal.record( id, i+1, committed1[i], committed2[i] );
+            if (analytics!=null)
+                analytics.round( committed1[i], committed2[i] );
+        }
+        MatchTable.getInstance().roundsPlayed( roundOf(next)-roundOf(current) );
+        changed();
+    }
+    
+    /**
+     * Gather the rounds a player has not yet been sent into a block.
+     */
+    private ScorecardBlock collect( boolean isPlayer1 )
+    {
+        long w          = word.get();
+        int count       = isPlayer1 ? committedCount1 : committedCount2;
+        int from        = isPlayer1 ? delivered1 : delivered2;
+        int to          = Math.max( from, Math.min( roundOf(w), count ) );
+        
+        ScorecardBlock block = new ScorecardBlock();
+        block.firstRound     = from;
+        block.maxRounds      = maxNumberOfRounds;
+        block.pending        = count - to;
+        block.rc             = RC_OK;
+        if (committed1!=null) {
+            byte[] mine   = isPlayer1 ? committed1 : committed2;
+            byte[] theirs = isPlayer1 ? committed2 : committed1;
+            block.myGestures       = Arrays.copyOfRange( mine, from, to );
+            block.opponentGestures = Arrays.copyOfRange( theirs, from, to );
+        } else {
+            block.myGestures       = new byte[0];
+            block.opponentGestures = new byte[0];
+        }
+        
+        int p1Score = p1ScoreOf(w);
+        int p2Score = p2ScoreOf(w);
+        block.roundsPlayed  = roundOf(w);
+        block.myScore       = isPlayer1 ? p1Score : p2Score;
+        block.opponentScore = isPlayer1 ? p2Score : p1Score;
+        block.ties          = block.roundsPlayed - p1Score - p2Score;
+        
+        if (stateOf(w)==State.GAME_OVER && to<maxNumberOfRounds)
+            block.rc = E_MATCH_ENDED;
+        else if (block.pending>0)
+            block.rc = E_IN_GAME_MODE;
+        
+        if (isPlayer1)
+            delivered1 = to;
+        else
+            delivered2 = to;
+        return block;
+    }
+    
+    /**
+     * Park until the FSM word changes from a value we've seen, or until a 
+     * deadline passes.
+     * 
+     * @return false if the deadline passed (or we were interrupted)
+     */
+    private boolean awaitChange( long seen, long deadline )
+    {
+        long remaining = deadline - System.nanoTime();
+        if (remaining<=0)
+            return false;
+        roundLock.lock();
+        try {
+            waiting++;
+            if (word.get()==seen)
+                roundChanged.awaitNanos( remaining );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting--;
+            roundLock.unlock();
+        }
+        return true;
+    }
+    
+    /**
+     * @return true if a query in this state would be productive (or, for 
+     * a specific round, if that round is over)
+     */
+    private static boolean isResolved( long w, int round )
+    {
+        switch (stateOf(w)) {
+            case P1_GESTURED:
+            case P2_GESTURED:  return round>0 && roundOf(w)>=round;
+            case GAME_OVER:    return true;
+            default:           return roundOf(w)>=round;
+        }
+    }
+    
+    /**
+     * condition on which awaitScorecard() parks; the lock guards nothing 
+     * else, and gestures only touch it when someone is waiting.  (A lock, 
+     * not a monitor, so that a parked virtual thread releases its carrier.)
+     */
+    private final ReentrantLock roundLock = new ReentrantLock();
+    private final Condition roundChanged = roundLock.newCondition();
+    private volatile int waiting = 0;
+    
+    /**
+     * Called after every change to the FSM word: wake anyone parked on 
+     * the match, and the first time the match is found over, retire it 
+     * in the MatchTable and (if it was played to the end) rate it.
+     */
+    private void changed()
+    {
+        if (stateOf(word.get())==State.GAME_OVER && retired.compareAndSet(false,true)) {
+            MatchTable.getInstance().retireMatch( this );
+            RatingService.getInstance().matchOver( this );
+            if (analytics!=null)
+                analytics.matchOver();
+        }
+        signalWaiters();
+    }
+    
+    private final AtomicBoolean retired = new AtomicBoolean(false);
+    
+    private void signalWaiters()
+    {
+        if (waiting>0) {
+            roundLock.lock();
+            try {
+                roundChanged.signalAll();
+            } finally {
+                roundLock.unlock();
+            }
+        }
+    }
+
     private enum PlayerSelector {
         PLAYER1,
         PLAYER2,
         UNKNOWN_PLAYER,
     }
-    
+
     private PlayerSelector whichPlayerCalledUs( Connection caller )
     {
         PlayerSelector sel = PlayerSelector.UNKNOWN_PLAYER;
@@ -97,12 +598,29 @@ public class Match
             sel =  PlayerSelector.PLAYER2;
         return sel;
     }
-    
-    public synchronized ResultCode doGesture( Connection caller, Gesture g )
+
+    public ResultCode doGesture( Connection caller, Gesture g )
     {
         l.entering("Match","doGesture");
-        
-        State previousState   = state;
+
+        long result = gesture( caller, g );
+        ResultCode rc = CODES[(int)((result>>>RC_SHIFT) & RC_MASK)];
+
+        if (rc==RC_OK)
+            l.log(Level.FINE,"productive doGesture");
+
+        return rc;
+    }
+
+    /**
+     * Apply a gesture to the FSM, score the round if it completes it, and 
+     * start pushing the result to the players.
+     * 
+     * @return the FSM word after the gesture, with the ResultCode in the 
+     * RC bits
+     */
+    private long gesture( Connection caller, Gesture g )
+    {
         PlayerSelector sel    = whichPlayerCalledUs(caller);
         ResultCode     rc     = RC_OK;
         EventType      event  = EventType.UNKNOWN_COMM;
@@ -111,53 +629,127 @@ public class Match
             case PLAYER1: event = EventType.P1_GESTURES;  break;
             case PLAYER2: event = EventType.P2_GESTURES;  break;
         }
-        switch (state) 
-        {
-            case BEGIN_ROUND:   rc = stBeginRound(   event, g ); break;
-            case P1_GESTURED:   rc = stP1Gestured(   event, g ); break;
-            case P2_GESTURED:   rc = stP2Gestured(   event, g ); break;
-            case BOTH_GESTURED: rc = stBothGestured( event, g ); break;
-            case P1_INFORMED:   rc = stP1Informed(   event, g ); break;
-            case P2_INFORMED:   rc = stP2Informed(   event, g ); break;
-            case BOTH_INFORMED: rc = stBothInformed( event, g ); break;
-            case GAME_OVER:     rc = stGameOver(     event, g ); break;
-        }
-        // if we just transitioned to BOTH_GESTURED, update score
-        if (state==State.BOTH_GESTURED 
-                && previousState!=state 
-                && rc==RC_OK)
-        {
-            if (player1Gesture==player2Gesture)
-                ties++;
-            else if (  (player1Gesture==ROCK     && player2Gesture==PAPER   )
-                    || (player1Gesture==PAPER    && player2Gesture==SCISSORS)
-                    || (player1Gesture==SCISSORS && player2Gesture==ROCK    ))
-                player2Score++;
-            else
-                player1Score++;
+        long current, next;
+        boolean roundComplete;
+        do {
+            current = word.get();
+            long result = transition( current, event, g );
+            rc   = CODES[(int)((result>>>RC_SHIFT) & RC_MASK)];
+            next = result & WORD_MASK;
+
+            // if we just transitioned to BOTH_GESTURED, update score as
+            // part of the same transition
+            roundComplete = stateOf(next)==State.BOTH_GESTURED
+                    && stateOf(current)!=State.BOTH_GESTURED
+                    && rc==RC_OK;
+            if (roundComplete)
+                next = scoreRound( next );
+        } while (next!=current && !word.compareAndSet( current, next ));
+        if (roundComplete) {
+            lastRoundWord = next;
+            int g1 = gesture1OrdinalOf(next);
+            int g2 = gesture2OrdinalOf(next);
+            RoundJournal.record( id, roundOf(next), g1, g2 );
+            if (analytics!=null)
+                analytics.round( g1, g2 );
+            MatchTable.getInstance().roundsPlayed( 1 );
         }
-        // attempt to push score, and update state if score was accepted
-        if (state==State.BOTH_GESTURED
-                && previousState!=state
-                && rc==RC_OK) 
+        if (next!=current)
+            changed();
+
+        // push the score to both players in parallel, without waiting; 
+        // the state is updated as each acknowledges receipt
+        if (roundComplete)
         {
-            // TODO: only try notifying once if rejected; don't keep trying (works, but inefficient)
-            boolean p1Notified = player1.notifyScore(makeScorecard(player1));
-            boolean p2Notified = player2.notifyScore(makeScorecard(player2));
-            if (p1Notified && !p2Notified)
-                state = State.P1_INFORMED;
-            else if (!p1Notified && p2Notified)
-                state = State.P2_INFORMED;
-            else if (p1Notified && p2Notified)
-                state = State.BOTH_INFORMED;
+            inform( player1, next );
+            inform( player2, next );
         }
         
-        if (rc==RC_OK) 
-            l.log(Level.FINE,"productive doGesture");
+        // an in-process opponent answers a gesture at once
+        else if (rc==RC_OK && next!=current)
+        {
+            Connection opponent = sel==PlayerSelector.PLAYER1 ? player2 : player1;
+            if (opponent.getStrategy()!=null)
+                gesture( opponent, ((StrategyConnection)opponent).nextGesture() );
+        }
 
-        return rc;
+        return withCode( next, rc );
     }
     
+    /**
+     * Give a player the result of a round: directly, for an in-process 
+     * strategy (which always acknowledges); otherwise by an asynchronous 
+     * push.
+     */
+    private void inform( Connection player, long w )
+    {
+        Scorecard score = makeScorecard( player, w );
+        if (player.getStrategy()!=null) {
+            if (player.notifyScore(score))
+                acknowledge( player, score.roundsPlayed );
+        }
+        else
+            ScoreNotifier.getInstance().push( this, player, score );
+    }
+    
+    /**
+     * Play a match between two in-process strategies to the end, on the 
+     * calling thread.  Each gesture by player one is answered at once by 
+     * player two, and each result acknowledged at once by both, so a 
+     * round is a handful of compare-and-sets.
+     */
+    void playOut()
+    {
+        if (player1.getStrategy()==null || player2.getStrategy()==null)
+            return;
+        StrategyConnection strategy1 = (StrategyConnection)player1;
+        while (!isGameOver()) {
+            long result = gesture( player1, strategy1.nextGesture() );
+            if (CODES[(int)((result>>>RC_SHIFT) & RC_MASK)]!=RC_OK)
+                break;
+        }
+    }
+
+    /**
+     * Record that a player acknowledged a pushed score for a round 
+     * (P1_INFORMED/P2_INFORMED/BOTH_INFORMED, or GAME_OVER after the last 
+     * round), just as if it had polled for it.  If the match has already 
+     * moved on past that round, this does nothing.
+     * 
+     * @param player the player who accepted the pushed score
+     * @param round the round the score was for
+     */
+    void acknowledge( Connection player, int round )
+    {
+        PlayerSelector sel = whichPlayerCalledUs(player);
+        long current, next;
+        do {
+            current = word.get();
+            if (roundOf(current)!=round)
+                return;
+            boolean p1 = sel==PlayerSelector.PLAYER1;
+            boolean p2 = sel==PlayerSelector.PLAYER2;
+            switch (stateOf(current)) {
+                case BOTH_GESTURED:                 break;
+                case P1_INFORMED:   p1 = true;      break;
+                case P2_INFORMED:   p2 = true;      break;
+                default:            return;
+            }
+            State state;
+            if (p1 && p2)
+                state = round>=maxNumberOfRounds ? State.GAME_OVER : State.BOTH_INFORMED;
+            else if (p1)
+                state = State.P1_INFORMED;
+            else if (p2)
+                state = State.P2_INFORMED;
+            else
+                return;
+            next = withState( current, state );
+        } while (next!=current && !word.compareAndSet( current, next ));
+        if (next!=current)
+            changed();
+    }
+
 
     public void abortMatch( Connection killjoy, ResultCode rc )
     {
@@ -165,7 +757,11 @@ public class Match
 
         // TODO TEST abortMatch
         // TODO perhaps administrative abort match, which needs to inform both players
-        state = State.GAME_OVER;
+        long current;
+        do {
+            current = word.get();
+        } while (!word.compareAndSet( current, withState( current, State.GAME_OVER ) ));
+        changed();
         PlayerSelector whichPlayer = whichPlayerCalledUs( killjoy );
         switch (whichPlayer) {
             case PLAYER1: player2.abortMatch(rc); break;
@@ -173,40 +769,217 @@ public class Match
         }
     }
 
-    public int getRoundNumber()
+    /**
+     * End the match from the server's side (an administrator, or a 
+     * tournament giving up on a stalled match), and tell both players.
+     * 
+     * @param rc the reason, passed on to both players
+     */
+    void terminate( ResultCode rc )
     {
-        return this.round;
+        long current;
+        do {
+            current = word.get();
+            if (stateOf(current)==State.GAME_OVER)
+                return;
+        } while (!word.compareAndSet( current, withState( current, State.GAME_OVER ) ));
+        changed();
+        player1.abortMatch(rc);
+        player2.abortMatch(rc);
+    }
+
+    boolean isGameOver()
+    {
+        return stateOf(word.get())==State.GAME_OVER;
     }
     
+    /**
+     * Park until the match is over: played out, or aborted.
+     * 
+     * @param timeoutMillis the longest to wait
+     * @return false if the match was still going at the deadline
+     */
+    boolean awaitGameOver( long timeoutMillis )
+    {
+        long deadline = System.nanoTime() + timeoutMillis*1000000L;
+        long current;
+        while (stateOf( current = word.get() )!=State.GAME_OVER) {
+            if (!awaitChange( current, deadline ))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        long w = word.get();
+        return String.format( "match %d: %s v %s, round %d/%d, %d-%d, %s", 
+                id, player1.getTeamName(), player2.getTeamName(), 
+                roundOf(w), maxNumberOfRounds, p1ScoreOf(w), p2ScoreOf(w), stateOf(w) );
+    }
+
+    public int getRoundNumber()
+    {
+        return roundOf(word.get());
+    }
+
     public Scorecard makeScorecard( Connection caller )
+    {
+        return makeScorecard( caller, word.get() );
+    }
+
+    private Scorecard makeScorecard( Connection caller, long w )
     {
         PlayerSelector sel  = whichPlayerCalledUs(caller);
         Scorecard score     = new Scorecard();
+        int round           = roundOf(w);
+        int player1Score    = p1ScoreOf(w);
+        int player2Score    = p2ScoreOf(w);
         score.maxRounds     = maxNumberOfRounds;
-        score.ties          = ties;
+        score.ties          = round - player1Score - player2Score;
         score.roundsPlayed  = round;
         score.rc            = RC_OK;
         if (sel==PlayerSelector.PLAYER1)
         {
             score.myScore         = player1Score;
             score.opponentScore   = player2Score;
-            score.myGesture       = player1Gesture;
-            score.opponentGesture = player2Gesture;
+            score.myGesture       = gesture1Of(w);
+            score.opponentGesture = gesture2Of(w);
         }
         else if (sel==PlayerSelector.PLAYER2)
         {
             score.myScore         = player2Score;
             score.opponentScore   = player1Score;
-            score.myGesture       = player2Gesture;
-            score.opponentGesture = player1Gesture;
+            score.myGesture       = gesture2Of(w);
+            score.opponentGesture = gesture1Of(w);
         }
         else
             return null;
-        
+
         return score;
     }
-    
-    
+
+
+    /****************************************/
+    /*           FSM WORD ACCESSORS         */
+    /****************************************/
+
+    private static State stateOf( long w ) {
+        return STATES[(int)((w>>>STATE_SHIFT) & STATE_MASK)];
+    }
+
+    private static int roundOf( long w ) {
+        return (int)((w>>>ROUND_SHIFT) & COUNT_MASK);
+    }
+
+    private static int p1ScoreOf( long w ) {
+        return (int)((w>>>P1_SHIFT) & COUNT_MASK);
+    }
+
+    private static int p2ScoreOf( long w ) {
+        return (int)((w>>>P2_SHIFT) & COUNT_MASK);
+    }
+
+    private static Gesture gesture1Of( long w ) {
+        int code = (int)((w>>>G1_SHIFT) & G_MASK);
+        return code==0 ? null : GESTURES[code-1];
+    }
+
+    private static Gesture gesture2Of( long w ) {
+        int code = (int)((w>>>G2_SHIFT) & G_MASK);
+        return code==0 ? null : GESTURES[code-1];
+    }
+
+    /**
+     * @return player one's gesture ordinal, a null gesture (code 0) 
+     * counting as NONE
+     */
+    private static int gesture1OrdinalOf( long w ) {
+        return Math.max( (int)((w>>>G1_SHIFT) & G_MASK) - 1, 0 );
+    }
+
+    private static int gesture2OrdinalOf( long w ) {
+        return Math.max( (int)((w>>>G2_SHIFT) & G_MASK) - 1, 0 );
+    }
+
+    private static long withState( long w, State s ) {
+        return (w & ~(STATE_MASK<<STATE_SHIFT)) | ((long)s.ordinal()<<STATE_SHIFT);
+    }
+
+    private static long withGesture1( long w, Gesture g ) {
+        long code = g==null ? 0 : g.ordinal()+1;
+        return (w & ~(G_MASK<<G1_SHIFT)) | (code<<G1_SHIFT);
+    }
+
+    private static long withGesture2( long w, Gesture g ) {
+        long code = g==null ? 0 : g.ordinal()+1;
+        return (w & ~(G_MASK<<G2_SHIFT)) | (code<<G2_SHIFT);
+    }
+
+    private static long nextRound( long w ) {
+        return w + (1L<<ROUND_SHIFT);
+    }
+
+    private static long withCode( long w, ResultCode rc ) {
+        return w | ((long)rc.ordinal()<<RC_SHIFT);
+    }
+
+    private static long pack( State s, int g1, int g2, int round, int p1Score, int p2Score ) {
+        return ((long)s.ordinal()<<STATE_SHIFT)
+             | ((long)(g1+1)<<G1_SHIFT)
+             | ((long)(g2+1)<<G2_SHIFT)
+             | ((long)round<<ROUND_SHIFT)
+             | ((long)p1Score<<P1_SHIFT)
+             | ((long)p2Score<<P2_SHIFT);
+    }
+
+    static final int TIE        = 0;
+    static final int P1_WINS    = 1;
+    static final int P2_WINS    = 2;
+
+    /**
+     * the winner of a round, indexed by the two players' gesture ordinals
+     */
+    private static final byte[][] WINNER = new byte[GESTURES.length][GESTURES.length];
+    static {
+        for (Gesture g1 : GESTURES) {
+            for (Gesture g2 : GESTURES) {
+                int winner;
+                if (g1==g2)
+                    winner = TIE;
+                else if (  (g1==ROCK     && g2==PAPER   )
+                        || (g1==PAPER    && g2==SCISSORS)
+                        || (g1==SCISSORS && g2==ROCK    ))
+                    winner = P2_WINS;
+                else
+                    winner = P1_WINS;
+                WINNER[g1.ordinal()][g2.ordinal()] = (byte)winner;
+            }
+        }
+    }
+
+    /**
+     * @return TIE, P1_WINS or P2_WINS, for a round with these gestures 
+     * (given as ordinals)
+     */
+    static int winnerOf( int g1, int g2 ) {
+        return WINNER[g1][g2];
+    }
+
+    /**
+     * Award the round just completed to its winner (or to neither, a tie)
+     */
+    private static long scoreRound( long w )
+    {
+        switch (WINNER[gesture1OrdinalOf(w)][gesture2OrdinalOf(w)]) {
+            case P1_WINS:  return w + (1L<<P1_SHIFT);
+            case P2_WINS:  return w + (1L<<P2_SHIFT);
+            default:       return w;
+        }
+    }
+
+
     /****************************************/
     /*          MAIN STATE MACHINE          */
     /****************************************/
@@ -218,113 +991,136 @@ public class Match
         P2_QUERY,
         UNKNOWN_COMM,
     }
-    
-    ResultCode stBeginRound(EventType action, Gesture g )
+
+    /*
+     * Each state function is pure: given the current FSM word, it returns
+     * the next word, with the transition's ResultCode in the RC bits.
+     * The caller installs the next word with a compare-and-set, and
+     * re-runs the transition if another thread got there first.
+     */
+
+    private long transition( long w, EventType event, Gesture g )
+    {
+        switch (stateOf(w))
+        {
+            case BEGIN_ROUND:   return stBeginRound(   w, event, g );
+            case P1_GESTURED:   return stP1Gestured(   w, event, g );
+            case P2_GESTURED:   return stP2Gestured(   w, event, g );
+            case BOTH_GESTURED: return stBothGestured( w, event, g );
+            case P1_INFORMED:   return stP1Informed(   w, event, g );
+            case P2_INFORMED:   return stP2Informed(   w, event, g );
+            case BOTH_INFORMED: return stBothInformed( w, event, g );
+            case GAME_OVER:     return stGameOver(     w, event, g );
+        }
+        return withCode( w, E_401 );
+    }
+
+    long stBeginRound( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
-        switch (action) 
+        switch (action)
         {
-            case P1_GESTURES:  player1Gesture = g; state = State.P1_GESTURED; break;
-            case P2_GESTURES:  player2Gesture = g; state = State.P2_GESTURED; break;
+            case P1_GESTURES:  w = withState( withGesture1(w,g), State.P1_GESTURED ); break;
+            case P2_GESTURES:  w = withState( withGesture2(w,g), State.P2_GESTURED ); break;
             case P1_QUERY:
             case P2_QUERY:     rc = RC_OK; break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-    
-    ResultCode stP1Gestured( EventType action, Gesture g ) 
+
+    long stP1Gestured( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
             case P1_GESTURES:  rc = E_ALREADY_GESTURED; break;
-            case P2_GESTURES:  player2Gesture = g; state = State.BOTH_GESTURED; round++; break;
+            case P2_GESTURES:  w = nextRound( withState( withGesture2(w,g), State.BOTH_GESTURED ) ); break;
             case P1_QUERY:
             case P2_QUERY:     rc = E_IN_GAME_MODE; break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-        
-    ResultCode stP2Gestured( EventType action, Gesture g ) 
+
+    long stP2Gestured( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
-            case P1_GESTURES:  player1Gesture = g; state = State.BOTH_GESTURED; round++; break;
+            case P1_GESTURES:  w = nextRound( withState( withGesture1(w,g), State.BOTH_GESTURED ) ); break;
             case P2_GESTURES:  rc = E_ALREADY_GESTURED; break;
             case P1_QUERY:
             case P2_QUERY:     rc = E_IN_GAME_MODE; break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-    
-    ResultCode stBothGestured( EventType action, Gesture g ) 
+
+    long stBothGestured( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
             case P1_GESTURES:
             case P2_GESTURES:  rc = E_IN_INFO_MODE; break;
-            case P1_QUERY:     state = State.P1_INFORMED; break;
-            case P2_QUERY:     state = State.P2_INFORMED; break;
+            case P1_QUERY:     w = withState( w, State.P1_INFORMED ); break;
+            case P2_QUERY:     w = withState( w, State.P2_INFORMED ); break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-    
-    ResultCode stP1Informed( EventType action, Gesture g ) 
+
+    long stP1Informed( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
             case P1_GESTURES:
             case P2_GESTURES:  rc = E_IN_INFO_MODE; break;
             case P1_QUERY:     break;
-            case P2_QUERY:     state = State.BOTH_INFORMED; break;
+            case P2_QUERY:     w = withState( w, State.BOTH_INFORMED ); break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
         // if transitioning to BOTH_INFORMED, and rounds>=maxRounds, game has ended
-        if (state==State.BOTH_INFORMED && round>=maxNumberOfRounds)
-            state = State.GAME_OVER;
-        return rc;
+        if (stateOf(w)==State.BOTH_INFORMED && roundOf(w)>=maxNumberOfRounds)
+            w = withState( w, State.GAME_OVER );
+        return withCode( w, rc );
     }
-    
-    ResultCode stP2Informed( EventType action, Gesture g ) 
+
+    long stP2Informed( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
             case P1_GESTURES:
             case P2_GESTURES:  rc = E_IN_INFO_MODE; break;
-            case P1_QUERY:     state = State.BOTH_INFORMED; break;
+            case P1_QUERY:     w = withState( w, State.BOTH_INFORMED ); break;
             case P2_QUERY:     break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
         // if transitioning to BOTH_INFORMED, and rounds>=maxRouonds, game has ended
-        if (state==State.BOTH_INFORMED && round>=maxNumberOfRounds)
-            state = State.GAME_OVER;
-        return rc;
+        if (stateOf(w)==State.BOTH_INFORMED && roundOf(w)>=maxNumberOfRounds)
+            w = withState( w, State.GAME_OVER );
+        return withCode( w, rc );
     }
-    
-    ResultCode stBothInformed( EventType action, Gesture g )
+
+    long stBothInformed( long w, EventType action, Gesture g )
     {
         ResultCode rc = RC_OK;
         switch (action) {
-            case P1_GESTURES:  player1Gesture = g; state = State.P1_GESTURED; break;
-            case P2_GESTURES:  player2Gesture = g; state = State.P2_GESTURED; break;
+            case P1_GESTURES:  w = withState( withGesture1(w,g), State.P1_GESTURED ); break;
+            case P2_GESTURES:  w = withState( withGesture2(w,g), State.P2_GESTURED ); break;
             case P1_QUERY:     break;
             case P2_QUERY:     break;
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-        
-    ResultCode stGameOver( EventType action, Gesture g )
+
+    long stGameOver( long w, EventType action, Gesture g )
     {
         ResultCode rc;
         switch (action) {
@@ -335,8 +1131,8 @@ public class Match
             case UNKNOWN_COMM: rc = E_UNRECOGNIZED_PLAYER; break;
             default:           rc = E_401; break;
         }
-        return rc;
+        return withCode( w, rc );
     }
-        
-    
+
+
 }
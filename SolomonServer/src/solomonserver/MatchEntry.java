@@ -0,0 +1,40 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * One match, as seen by an administrator: enough to find it again by ID 
+ * (to kill it, for one).
+ */
+public class MatchEntry implements Serializable {
+    
+    MatchEntry( Match match )
+    {
+        Scorecard score = match.makeScorecard( match.getPlayer1() );
+        this.id            = match.getID();
+        this.player1       = match.getPlayer1().getTeamName();
+        this.player2       = match.getPlayer2().getTeamName();
+        this.roundsPlayed  = score.roundsPlayed;
+        this.maxRounds     = score.maxRounds;
+        this.player1Score  = score.myScore;
+        this.player2Score  = score.opponentScore;
+        this.over          = match.isGameOver();
+    }
+    
+    public int id;
+    public String player1;
+    public String player2;
+    public int roundsPlayed;
+    public int maxRounds;
+    public int player1Score;
+    public int player2Score;
+    public boolean over;
+    
+    @Override
+    public String toString()
+    {
+        return String.format( "%6d  %12s v %-12s  round %d/%d  %d-%d%s", 
+                id, player1, player2, roundsPlayed, maxRounds, 
+                player1Score, player2Score, over ? "  over" : "" );
+    }
+}
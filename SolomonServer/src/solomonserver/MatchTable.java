@@ -1,45 +1,250 @@
 package solomonserver;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *Simple aggregation for matches, for efficiency.  
+ * Index of the server's matches, by ID and by player.
  * (The Match objects themselves do almost all the work.)
- * 
+ *
+ * Every index is a concurrent map or set, so that nothing here is ever
+ * locked, and a lookup costs the same however many matches there are.
+ * Alongside the indexes are the sets behind each Filter: matches in play,
+ * those in play with a player gone ZOMBIE, and those over.  A match moves
+ * among them as it (or one of its players) changes state.
+ *
+ * Finished matches are kept for inspection, but only the latest few: past
+ * solomon.matchRetention of them (1000 by default), the oldest is
+ * forgotten, so that memory stays flat however long the server runs.
+ *
+ * Published through JMX (see MatchTableMBean), with counts kept as each
+ * set changes, and a count of the rounds played.
+ *
  * @author bwormley
  */
-public class MatchTable {
+public class MatchTable implements MatchTableMBean {
     final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
-    
+
+    /**
+     * how many finished matches to keep
+     */
+    static final int RETENTION = Integer.getInteger("solomon.matchRetention", 1000);
+
     private MatchTable() {}
-    
-    static MatchTable _instance = null;
-    
-    public static synchronized MatchTable getInstance() {
-        if (_instance==null)
-            _instance = new MatchTable();
+
+    private static final MatchTable _instance = new MatchTable();
+
+    public static MatchTable getInstance() {
         return _instance;
     }
-    
-    ArrayList<Match> list = new ArrayList<Match>();
-    
+
+    private final ConcurrentHashMap<Integer,Match> byID
+            = new ConcurrentHashMap<Integer,Match>();
+
+    /**
+     * each player's latest match
+     */
+    private final ConcurrentHashMap<Connection,Match> byPlayer
+            = new ConcurrentHashMap<Connection,Match>();
+
+    private final Set<Match> inPlay     = newSet();
+    private final Set<Match> zombies    = newSet();
+    private final Set<Match> terminated = newSet();
+
+    /**
+     * finished matches, oldest first, for retention
+     */
+    private final ConcurrentLinkedQueue<Match> retired = new ConcurrentLinkedQueue<Match>();
+    private final AtomicInteger retiredCount = new AtomicInteger();
+
+    /**
+     * counts for JMX, kept alongside the sets
+     */
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger zombieCount = new AtomicInteger();
+    private final AtomicLong finishedCount  = new AtomicLong();
+    private final AtomicLong roundsPlayed   = new AtomicLong();
+    private final RateMeter roundRate       = new RateMeter();
+
+    private static Set<Match> newSet() {
+        return Collections.newSetFromMap( new ConcurrentHashMap<Match,Boolean>() );
+    }
+
+    /**
+     * Enter a match that has begun.
+     */
     void addMatch( Match match ) {
-        list.add(match);
+        byID.put( match.getID(), match );
+        byPlayer.put( match.getPlayer1(), match );
+        byPlayer.put( match.getPlayer2(), match );
+        if (inPlay.add( match ))
+            activeCount.incrementAndGet();
+        RecoveryLog.matchBegun( match );
+        // it may have been played out before it was entered
+        if (match.isGameOver())
+            retireMatch( match );
+        else
+            updateZombie( match );
     }
-    
-    void removeMatch( Connection player, Match match ) {
-        list.remove( match );
+
+    /**
+     * Move a match that is over (played out, or aborted) to the finished
+     * matches, and forget the oldest finished match if there are too many.
+     * Called by the match itself, or by whoever abandons it; a match is
+     * only retired once.
+     */
+    void retireMatch( Match match ) {
+        if (!inPlay.remove( match ))
+            return;     // never entered (refused), or already retired
+        activeCount.decrementAndGet();
+        finishedCount.incrementAndGet();
+        unzombie( match );
+        terminated.add( match );
+        RecoveryLog.matchOver( match );
+        retired.add( match );
+        if (retiredCount.incrementAndGet()>RETENTION) {
+            Match oldest = retired.poll();
+            if (oldest!=null) {
+                retiredCount.decrementAndGet();
+                forget( oldest );
+            }
+        }
+    }
+
+    private void forget( Match match ) {
+        terminated.remove( match );
+        byID.remove( match.getID(), match );
+        byPlayer.remove( match.getPlayer1(), match );
+        byPlayer.remove( match.getPlayer2(), match );
+    }
+
+    /**
+     * Re-file a match in play after one of its players changed state: it
+     * is a ZOMBIE match while either player is a ZOMBIE.
+     */
+    void updateZombie( Match match ) {
+        if (!inPlay.contains( match ))
+            return;
+        if (match.getPlayer1().getState()==ConnectionState.ZOMBIE
+                || match.getPlayer2().getState()==ConnectionState.ZOMBIE) {
+            if (zombies.add( match ))
+                zombieCount.incrementAndGet();
+        }
+        else
+            unzombie( match );
+        // it may have ended meanwhile
+        if (!inPlay.contains( match ))
+            unzombie( match );
+    }
+
+    private void unzombie( Match match ) {
+        if (zombies.remove( match ))
+            zombieCount.decrementAndGet();
+    }
+
+    /**
+     * Count rounds just played.
+     */
+    void roundsPlayed( int n ) {
+        roundsPlayed.addAndGet( n );
+    }
+
+    /**
+     * Forget a player that has left the server (its matches are kept,
+     * until they age out).
+     */
+    void removePlayer( Connection player ) {
+        byPlayer.remove( player );
     }
-    
-    enum Filter { 
+
+    /**
+     * @return the match, or null if there is none by that ID (or it has
+     * aged out)
+     */
+    Match getMatch( int matchID ) {
+        return byID.get( matchID );
+    }
+
+    /**
+     * @return the player's latest match, or null
+     */
+    Match getMatch( Connection player ) {
+        return byPlayer.get( player );
+    }
+
+    /**
+     * Stop a match in play, and tell both players.
+     *
+     * @return false if there is no such match in play
+     */
+    boolean killMatch( int matchID, ResultCode rc ) {
+        Match match = byID.get( matchID );
+        if (match==null || match.isGameOver())
+            return false;
+        l.log(Level.INFO,"killing match {0}",match);
+        match.terminate( rc );
+        retireMatch( match );
+        return true;
+    }
+
+    enum Filter {
         NONE,         // return all matches in table
         IN_PLAY,     // return all matches in active play
-        ZOMBIE,      // return matches that 
+        ZOMBIE,      // return matches in play with a player that has gone silent
         TERMINATED } // return matches finished but persisting in table
-    
+
     ArrayList<Match> getMatchList( Filter filter ) {
-        return list;
-    } 
-    
+        switch (filter) {
+            case IN_PLAY:    return new ArrayList<Match>( inPlay );
+            case ZOMBIE:     return new ArrayList<Match>( zombies );
+            case TERMINATED: return new ArrayList<Match>( terminated );
+            default:         return new ArrayList<Match>( byID.values() );
+        }
+    }
+
+    /**
+     * @return how many matches pass the filter
+     */
+    int getMatchCount( Filter filter ) {
+        switch (filter) {
+            case IN_PLAY:    return inPlay.size();
+            case ZOMBIE:     return zombies.size();
+            case TERMINATED: return terminated.size();
+            default:         return byID.size();
+        }
+    }
+
+    /* *** JMX *** */
+
+    @Override
+    public int getActiveMatchCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getZombieMatchCount() {
+        return zombieCount.get();
+    }
+
+    @Override
+    public long getFinishedMatchCount() {
+        return finishedCount.get();
+    }
+
+    @Override
+    public long getRoundsPlayed() {
+        return roundsPlayed.get();
+    }
+
+    @Override
+    public double getRoundsPerSecond() {
+        return roundRate.rate( roundsPlayed.get() );
+    }
 }
@@ -0,0 +1,28 @@
+package solomonserver;
+
+/**
+ * The match table, as seen through JMX: matches in play and finished,
+ * and the rounds played.  Every count is kept as matches begin, end and
+ * play, so reading one costs nothing.
+ */
+public interface MatchTableMBean {
+
+    int getActiveMatchCount();
+
+    /**
+     * @return matches in play with a player that has gone silent
+     */
+    int getZombieMatchCount();
+
+    /**
+     * @return matches finished since the server started
+     */
+    long getFinishedMatchCount();
+
+    /**
+     * @return rounds played since the server started
+     */
+    long getRoundsPlayed();
+
+    double getRoundsPerSecond();
+}
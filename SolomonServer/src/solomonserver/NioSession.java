@@ -0,0 +1,413 @@
+package solomonserver;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static solomonserver.ResultCode.*;
+import static solomonserver.WireProtocol.*;
+
+/**
+ * One client of the NIO transport: its socket, its Connection once it has
+ * registered, and the calls the server has made to it.  The session is
+ * also the client's player list listener (it forwards each change as a
+ * one-way call), so a client has at most one.
+ */
+class NioSession implements IPlayerListListener {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * longest the server waits for a client to answer a callback, in
+     * milliseconds (a challenge may be put to a human)
+     */
+    static final long CALLBACK_TIMEOUT = 60000;
+
+    private final NioTransport transport;
+    private final SocketChannel channel;
+    private SelectionKey key;
+
+    private ByteBuffer in = ByteBuffer.allocate(4096);
+
+    /**
+     * frames waiting for the socket to accept them; guarded by itself
+     */
+    private final ArrayDeque<ByteBuffer> outbox = new ArrayDeque<ByteBuffer>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * the client's connection, once it registers
+     */
+    private volatile Connection conn = null;
+
+    private final AtomicInteger nextCallId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer,PendingCall> calls = new ConcurrentHashMap<Integer,PendingCall>();
+
+    NioSession( NioTransport transport, SocketChannel channel ) {
+        this.transport = transport;
+        this.channel = channel;
+    }
+
+    void setKey( SelectionKey key ) {
+        this.key = key;
+    }
+
+    /* *** SELECTOR THREAD *** */
+
+    /**
+     * Read what has arrived, and dispatch every complete frame.
+     */
+    void onReadable() throws IOException {
+        if (channel.read(in)<0)
+            throw new EOFException();
+        in.flip();
+        while (in.remaining()>=4) {
+            int length = in.getInt( in.position() );
+            if (length<HEADER-4 || length>MAX_FRAME)
+                throw new IOException( "bad frame length " + length );
+            if (in.remaining()<4+length) {
+                // make room for the rest of a large frame
+                if (4+length>in.capacity()) {
+                    ByteBuffer bigger = ByteBuffer.allocate( 4+length );
+                    bigger.put(in);
+                    in = bigger;
+                    return;
+                }
+                break;
+            }
+            byte[] frame = new byte[length];
+            in.position( in.position()+4 );
+            in.get( frame );
+            dispatch( ByteBuffer.wrap(frame) );
+        }
+        in.compact();
+    }
+
+    /**
+     * Finish writing what the socket would not take earlier.
+     */
+    void onWritable() throws IOException {
+        synchronized (outbox) {
+            flush();
+        }
+    }
+
+    /**
+     * Route a frame: replies complete our calls at once; keepalives are
+     * recorded at once; everything else goes to a worker.
+     */
+    private void dispatch( final ByteBuffer frame ) {
+        final int opcode = frame.get() & 0xFF;
+        final int callId = frame.getInt();
+        switch (opcode) {
+            case REPLY:
+            case ERROR:
+                PendingCall call = calls.remove(callId);
+                if (call!=null) {
+                    if (opcode==REPLY)
+                        call.complete(frame);
+                    else
+                        call.fail( new WireFormat.Decoder(frame).readString() );
+                }
+                return;
+            case KEEPALIVE:
+                Connection c = conn;
+                try {
+                    if (c!=null)
+                        c.keepAlive();
+                } catch (RemoteException e) {}
+                return;
+        }
+        transport.workers.execute( new Runnable() {
+            @Override
+            public void run() {
+                WireFormat.Encoder reply = new WireFormat.Encoder( REPLY, callId );
+                try {
+                    handle( opcode, new WireFormat.Decoder(frame), reply );
+                } catch (Exception e) {
+                    l.log(Level.FINE,"NIO request failed",e);
+                    reply = new WireFormat.Encoder( ERROR, callId ).writeString( String.valueOf(e) );
+                }
+                if (callId==0)
+                    return;
+                // a write that fails drops the session, not the worker
+                try {
+                    send( reply.toFrame() );
+                } catch (RuntimeException e) {
+                    close(e);
+                }
+            }
+        });
+    }
+
+    /* *** REQUESTS *** */
+
+    /**
+     * Carry out a client's request, on a worker thread.
+     */
+    private void handle( int opcode, WireFormat.Decoder req, WireFormat.Encoder reply )
+            throws RemoteException
+    {
+        if (opcode==REGISTER) {
+            reply.writeInt( register( req.readString() ) );
+            return;
+        }
+
+        Connection c = conn;
+        if (c==null)
+            throw new RemoteException( "not registered" );
+        switch (opcode) {
+            case REQUEST_REMOTE_MATCH: {
+                int playerID = req.readInt();
+                reply.writeEnum( c.requestRemoteMatch( playerID, req.readInt() ) );
+                break;
+            }
+            case TERMINATE_CONNECTION:
+                c.terminateConnection( req.readResultCode() );
+                break;
+            case DO_GESTURE:
+                reply.writeEnum( c.doGesture( req.readGesture() ) );
+                break;
+            case ABORTING_MATCH:
+                c.abortingMatch( req.readResultCode() );
+                break;
+            case GET_SCORECARD:
+                reply.writeScorecard( c.getScorecard() );
+                break;
+            case AWAIT_SCORECARD: {
+                int round = req.readInt();
+                reply.writeScorecard( c.awaitScorecard( round, req.readLong() ) );
+                break;
+            }
+            case PLAY_ROUND: {
+                Gesture g = req.readGesture();
+                reply.writeScorecard( c.playRound( g, req.readLong() ) );
+                break;
+            }
+            case SUBMIT_GESTURES: {
+                byte[] ordinals = req.readBytes();
+                Gesture[] all = Gesture.values();
+                Gesture[] gestures = new Gesture[ordinals.length];
+                for (int i=0; i<ordinals.length; i++)
+                    gestures[i] = (ordinals[i] & 0xFF)<all.length ? all[ordinals[i] & 0xFF] : null;
+                reply.writeScorecardBlock( c.submitGestures( gestures, req.readLong() ) );
+                break;
+            }
+            case GET_PLAYER_LIST:
+                reply.writePlayerList( c.getPlayerList() );
+                break;
+            case GET_PLAYER_LIST_SINCE:
+                reply.writePlayerListDelta( c.getPlayerListSince( req.readLong() ) );
+                break;
+            case ADD_LISTENER:
+                c.addPlayerListListener( this );
+                break;
+            case REMOVE_LISTENER:
+                c.removePlayerListListener( this );
+                break;
+            case GET_ID:
+                reply.writeInt( c.getID() );
+                break;
+            default:
+                throw new RemoteException( "unknown opcode " + opcode );
+        }
+    }
+
+    /**
+     * Register the client, as Registrar.register() does for RMI clients.
+     *
+     * @return the new connection's ID, or 0 if refused
+     */
+    private int register( String teamName ) throws RemoteException {
+        if (conn!=null)
+            return conn.getID();
+        String origin = ((InetSocketAddress)channel.socket().getRemoteSocketAddress())
+                .getAddress().getHostAddress();
+        // a client coming back to a recovered server resumes where it was
+        Connection c = ConnectionTable.getInstance().reclaimPlayer( teamName, origin, new Response() );
+        if (c!=null) {
+            Registrar.countRegistration( true );
+            UnicastRemoteObject.unexportObject( c, true );
+            conn = c;
+            return c.getID();
+        }
+        c = new Connection( teamName, new Response(), origin );
+        // reached through this session, not through RMI
+        UnicastRemoteObject.unexportObject( c, true );
+        l.log(Level.INFO,"registered (NIO)",c);
+        Registrar.countRegistration( false );
+        if (ConnectionTable.getInstance().addPlayer(c)==null)
+            return 0;
+        conn = c;
+        return c.getID();
+    }
+
+    /* *** CALLS TO THE CLIENT *** */
+
+    /**
+     * the client's IResponse, as seen by its Connection
+     */
+    private class Response implements IResponse {
+        @Override
+        public ResultCode requestToInitiateMatch( PlayerEntry challenger, int maxNumberOfRounds )
+                throws RemoteException
+        {
+            int callId = newCallId();
+            WireFormat.Encoder req = new WireFormat.Encoder( CB_REQUEST_MATCH, callId );
+            req.writePlayerEntry( challenger ).writeInt( maxNumberOfRounds );
+            return new WireFormat.Decoder( call( callId, req ) ).readResultCode();
+        }
+
+        @Override
+        public void abortMatch( ResultCode rc ) throws RemoteException {
+            send( new WireFormat.Encoder( CB_ABORT_MATCH, 0 ).writeEnum(rc).toFrame() );
+        }
+
+        @Override
+        public void abortConnection( ResultCode rc ) throws RemoteException {
+            send( new WireFormat.Encoder( CB_ABORT_CONNECTION, 0 ).writeEnum(rc).toFrame() );
+        }
+
+        @Override
+        public ResultCode notifyScore( Scorecard score ) throws RemoteException {
+            int callId = newCallId();
+            WireFormat.Encoder req = new WireFormat.Encoder( CB_NOTIFY_SCORE, callId );
+            req.writeScorecard( score );
+            return new WireFormat.Decoder( call( callId, req ) ).readResultCode();
+        }
+    }
+
+    @Override
+    public ResultCode notifyAction( ListAction e ) throws RemoteException {
+        if (closed)
+            throw new RemoteException( "connection closed" );
+        send( new WireFormat.Encoder( CB_LIST_ACTION, 0 ).writeListAction(e).toFrame() );
+        return RC_OK;
+    }
+
+    /**
+     * @return an ID for a call to the client (never 0, which is one-way)
+     */
+    private int newCallId() {
+        int callId;
+        do {
+            callId = nextCallId.incrementAndGet();
+        } while (callId==0);
+        return callId;
+    }
+
+    /**
+     * Send a call to the client, and wait for the answer.
+     */
+    private ByteBuffer call( int callId, WireFormat.Encoder req ) throws RemoteException {
+        PendingCall pending = new PendingCall();
+        calls.put( callId, pending );
+        if (closed)
+            pending.fail( "connection closed" );
+        else
+            send( req.toFrame() );
+        try {
+            return pending.await( CALLBACK_TIMEOUT );
+        } finally {
+            calls.remove( callId );
+        }
+    }
+
+    /* *** WRITING *** */
+
+    /**
+     * Queue a frame, and write as much as the socket will take now; the
+     * selector finishes the rest.  Frames go out whole, in order.
+     */
+    void send( ByteBuffer frame ) {
+        IOException failure = null;
+        synchronized (outbox) {
+            if (closed)
+                return;
+            outbox.add(frame);
+            if (outbox.size()==1) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure!=null)
+            close(failure);
+    }
+
+    /**
+     * Write queued frames until done, or the socket is full.  Called with
+     * the outbox locked.
+     *
+     * @throws ClosedChannelException if the socket is full and the session
+     * is being closed, so there is no selector left to finish the writing
+     */
+    private void flush() throws IOException {
+        while (!outbox.isEmpty()) {
+            ByteBuffer frame = outbox.peek();
+            channel.write(frame);
+            if (frame.hasRemaining()) {
+                if (!key.isValid())
+                    throw new ClosedChannelException();
+                key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+                key.selector().wakeup();
+                return;
+            }
+            outbox.poll();
+        }
+        if (key.isValid())
+            key.interestOps( SelectionKey.OP_READ );
+    }
+
+    /* *** CLOSING *** */
+
+    /**
+     * Drop the session: the client is gone, so fail our calls to it, and
+     * reclaim its connection (aborting any match) without waiting for the
+     * zombie reaper.  The reclaiming is done on a worker, since telling the
+     * opponent may be a remote call.
+     */
+    void close( Exception cause ) {
+        synchronized (outbox) {
+            if (closed)
+                return;
+            closed = true;
+            outbox.clear();
+        }
+        l.log(Level.FINE,"NIO session closed: {0}",cause);
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {}
+
+        for (PendingCall call : calls.values())
+            call.fail( "connection closed" );
+        calls.clear();
+
+        final Connection c = conn;
+        if (c!=null) {
+            transport.workers.execute( new Runnable() {
+                @Override
+                public void run() {
+                    ConnectionTable table = ConnectionTable.getInstance();
+                    table.removeListener( NioSession.this );
+                    if (table.getPlayer(c.getID())==c)
+                        table.getReaper().reap( c, E_NO_CONNECTION );
+                }
+            });
+        }
+    }
+}
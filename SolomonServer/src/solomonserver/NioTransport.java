@@ -0,0 +1,105 @@
+package solomonserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The NIO transport: an alternative to RMI for clients, speaking the
+ * binary protocol described in WireProtocol.
+ *
+ * One selector thread accepts connections, reads and frames requests, and
+ * finishes writes that could not complete at once.  Requests are carried
+ * out on a pool of workers, since some of them (awaitScorecard(),
+ * playRound(), a challenge waiting on the opponent's answer) park until
+ * the other player acts.
+ */
+class NioTransport implements Runnable {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    /**
+     * threads on which requests are carried out
+     */
+    final ExecutorService workers = ServerThreads.newPool( "solomon-nio-worker-" );
+
+    private NioTransport( int port ) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.socket().bind( new InetSocketAddress(port) );
+        server.configureBlocking(false);
+        server.register( selector, SelectionKey.OP_ACCEPT );
+    }
+
+    /**
+     * Open the port, and start serving it on a daemon thread.
+     *
+     * @param port the port to listen on
+     * @return the running transport
+     * @throws IOException if the port cannot be opened
+     */
+    static NioTransport start( int port ) throws IOException {
+        NioTransport transport = new NioTransport(port);
+        Thread t = new Thread( transport, "solomon-nio-selector" );
+        t.setDaemon(true);
+        t.start();
+        l.log(Level.INFO,"NIO transport listening on port {0}",port);
+        return transport;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    @Override
+    public void run() {
+        while (selector.isOpen()) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isAcceptable())
+                        accept();
+                    else
+                        service(key);
+                }
+            } catch (Exception e) {
+                l.log(Level.WARNING,"error in NIO selector",e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept())!=null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            NioSession session = new NioSession( this, channel );
+            session.setKey( channel.register( selector, SelectionKey.OP_READ, session ) );
+        }
+    }
+
+    private void service( SelectionKey key ) {
+        NioSession session = (NioSession)key.attachment();
+        try {
+            if (key.isValid() && key.isReadable())
+                session.onReadable();
+            if (key.isValid() && key.isWritable())
+                session.onWritable();
+        } catch (Exception e) {
+            session.close( e );
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package solomonserver;
+
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A call made over the NIO transport, awaiting its REPLY.  The caller
+ * parks in await(); the thread reading the connection completes it.
+ *
+ * The caller parks on a latch rather than a monitor, so that a virtual
+ * thread waiting on a slow client releases its carrier (see ServerThreads).
+ */
+public final class PendingCall {
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile ByteBuffer reply = null;
+    private volatile String error = null;
+
+    /**
+     * Deliver the reply's payload.
+     */
+    public void complete( ByteBuffer reply ) {
+        this.reply = reply;
+        done.countDown();
+    }
+
+    /**
+     * Fail the call (an ERROR reply, or the connection was lost).
+     */
+    public void fail( String message ) {
+        this.error = message;
+        done.countDown();
+    }
+
+    /**
+     * Wait for the reply.
+     *
+     * @param timeoutMillis the longest to wait
+     * @return the reply's payload
+     * @throws RemoteException if the call failed or timed out, just as an
+     * RMI call would
+     */
+    public ByteBuffer await( long timeoutMillis ) throws RemoteException {
+        try {
+            if (!done.await( timeoutMillis, TimeUnit.MILLISECONDS ))
+                throw new RemoteException( "call timed out" );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException( "call interrupted" );
+        }
+        if (error!=null)
+            throw new RemoteException( error );
+        return reply;
+    }
+}
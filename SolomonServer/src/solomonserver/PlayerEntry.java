@@ -1,8 +1,21 @@
 package solomonserver;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
-public class PlayerEntry implements Serializable {
+/**
+ * One player, as seen in the player list.  Externalizable, written in the 
+ * compact encodings of WireFormat.
+ */
+public class PlayerEntry implements Externalizable {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * for deserialization only
+     */
+    public PlayerEntry() {}
     
     PlayerEntry( String teamName, String origin, int ID, ConnectionState state )
     {
@@ -30,4 +43,20 @@ public class PlayerEntry implements Serializable {
     {
         return String.format( "%12s @ %-15s  %s", teamName, origin, state );
     }
+
+    @Override
+    public void writeExternal( ObjectOutput out ) throws IOException {
+        WireFormat.writeText( out, teamName );
+        WireFormat.writeText( out, origin );
+        WireFormat.writeVarInt( out, id );
+        WireFormat.writeOrdinal( out, state );
+    }
+
+    @Override
+    public void readExternal( ObjectInput in ) throws IOException {
+        teamName = WireFormat.readText( in );
+        origin   = WireFormat.readText( in );
+        id       = WireFormat.readVarInt( in );
+        state    = WireFormat.readOrdinal( in, WireFormat.STATES );
+    }
 }
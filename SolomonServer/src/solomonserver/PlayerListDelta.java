@@ -0,0 +1,65 @@
+package solomonserver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The changes to the connection table since a given version, as returned 
+ * by getPlayerListSince().  If the caller is too far behind for the server 
+ * to still have every change it missed, the server instead returns a full 
+ * snapshot of the table.
+ * 
+ * Changes are idempotent per player ID: a snapshot may already reflect a 
+ * change that is also reported in the next delta, so clients should apply 
+ * ADD and CHANGE as "put by id" and REMOVE as "remove by id".
+ */
+public class PlayerListDelta implements Serializable {
+    
+    private PlayerListDelta( long version, boolean snapshot, 
+                             ArrayList<PlayerEntry> players, 
+                             ArrayList<ListAction> changes ) {
+        this.version  = version;
+        this.snapshot = snapshot;
+        this.players  = players;
+        this.changes  = changes;
+    }
+    
+    static PlayerListDelta snapshot( long version, ArrayList<PlayerEntry> players ) {
+        return new PlayerListDelta( version, true, players, new ArrayList<ListAction>(0) );
+    }
+    
+    static PlayerListDelta changes( long version, ArrayList<ListAction> changes ) {
+        return new PlayerListDelta( version, false, null, changes );
+    }
+    
+    /**
+     * the table version this delta brings the caller up to; pass it to 
+     * the next call to getPlayerListSince()
+     */
+    public long version;
+    
+    /**
+     * true if this is a full snapshot (in players), rather than a list 
+     * of changes
+     */
+    public boolean snapshot;
+    
+    /**
+     * the complete table, if this is a snapshot; otherwise null
+     */
+    public ArrayList<PlayerEntry> players;
+    
+    /**
+     * the changes since the requested version, oldest first, if this is 
+     * not a snapshot
+     */
+    public ArrayList<ListAction> changes;
+    
+    @Override
+    public String toString()
+    {
+        return snapshot 
+                ? String.format( "v%d snapshot of %d players", version, players.size() )
+                : String.format( "v%d %d changes", version, changes.size() );
+    }
+}
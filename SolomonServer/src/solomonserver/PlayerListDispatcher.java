@@ -0,0 +1,123 @@
+package solomonserver;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers connection table events to the remote player list listeners.
+ *
+ * Each listener gets its own bounded queue and its own delivery thread, so
+ * publishing an event never waits on a client's network I/O, and one slow
+ * or dead client cannot hold up delivery to the others.  A listener that
+ * falls so far behind that its queue fills, or that fails several
+ * deliveries in a row, is dropped; the client may re-register its listener
+ * and refresh its list to resynchronize.
+ */
+class PlayerListDispatcher {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * events a listener may fall behind before it is dropped
+     */
+    static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * consecutive failed deliveries before a listener is presumed dead
+     */
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private final ConcurrentHashMap<IPlayerListListener,Channel> channels
+            = new ConcurrentHashMap<IPlayerListListener,Channel>();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    void addListener( IPlayerListListener listener ) {
+        Channel channel = new Channel( listener );
+        if (channels.putIfAbsent( listener, channel )==null)
+            channel.start();
+    }
+
+    void removeListener( IPlayerListListener listener ) {
+        Channel channel = channels.remove( listener );
+        if (channel!=null)
+            channel.close();
+    }
+
+    int getListenerCount() {
+        return channels.size();
+    }
+
+    /**
+     * Queue an event for every listener.  Never blocks.
+     *
+     * @param event the change to the connection table
+     */
+    void publish( ListAction event ) {
+        for (Channel channel : channels.values()) {
+            if (!channel.queue.offer(event)) {
+                l.log(Level.WARNING,"dropping player list listener: {0} events behind",QUEUE_CAPACITY);
+                drop( channel );
+            }
+        }
+    }
+
+    private void drop( Channel channel ) {
+        if (channels.remove( channel.listener, channel ))
+            channel.close();
+    }
+
+    /**
+     * The queue and delivery thread for a single listener
+     */
+    private class Channel implements Runnable {
+
+        final IPlayerListListener listener;
+        final BlockingQueue<ListAction> queue = new ArrayBlockingQueue<ListAction>(QUEUE_CAPACITY);
+        private final Thread worker;
+        private volatile boolean closed = false;
+
+        Channel( IPlayerListListener listener ) {
+            this.listener = listener;
+            worker = ServerThreads.newThread( this, "solomon-listener-" + threadNumber.incrementAndGet() );
+        }
+
+        void start() {
+            worker.start();
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+            worker.interrupt();
+        }
+
+        @Override
+        public void run() {
+            int failures = 0;
+            while (!closed) {
+                ListAction event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    listener.notifyAction(event);
+                    failures = 0;
+                } catch (Exception e) {
+                    l.log(Level.WARNING, "error sending ListAction",e);
+                    if (++failures>=MAX_CONSECUTIVE_FAILURES) {
+                        l.log(Level.WARNING,"dropping player list listener after {0} failures",failures);
+                        drop( this );
+                    }
+                }
+                RpcMetrics.record( RpcMetrics.Op.NOTIFY_ACTION, start );
+            }
+        }
+    }
+}
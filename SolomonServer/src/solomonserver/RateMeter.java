@@ -0,0 +1,41 @@
+package solomonserver;
+
+/**
+ * The rate at which a counter climbs, per second, measured when asked
+ * rather than by a thread of its own.  Each reading compares the count
+ * with the one it kept at least a second earlier, so a monitor polling
+ * every second or so sees the rate over the last second or two; the
+ * first reading after a long quiet gives the average since the last.
+ */
+final class RateMeter {
+
+    private static final long INTERVAL_NANOS = 1000000000L;
+
+    /**
+     * the latest sample kept, and the one before it; guarded by the meter
+     */
+    private long lastCount;
+    private long lastTime;
+    private long prevCount;
+    private long prevTime;
+
+    RateMeter() {
+        lastTime = prevTime = System.nanoTime();
+    }
+
+    /**
+     * @param count the counter's value now
+     * @return its rate of climb, per second
+     */
+    synchronized double rate( long count ) {
+        long now = System.nanoTime();
+        if (now-lastTime>=INTERVAL_NANOS) {
+            prevCount = lastCount;
+            prevTime  = lastTime;
+            lastCount = count;
+            lastTime  = now;
+        }
+        long elapsed = now - prevTime;
+        return elapsed<=0 ? 0.0 : (count-prevCount) * 1e9 / elapsed;
+    }
+}
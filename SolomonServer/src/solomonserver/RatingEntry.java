@@ -0,0 +1,33 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * One team's place on the leaderboard.
+ */
+public class RatingEntry implements Serializable {
+    
+    public String teamName;
+    
+    /**
+     * Elo rating; every team starts at RatingService.INITIAL_RATING
+     */
+    public double rating;
+    
+    /**
+     * 1 for the highest rated team
+     */
+    public int rank;
+    
+    public int matchesPlayed;
+    public int won;
+    public int lost;
+    public int drawn;
+    
+    @Override
+    public String toString()
+    {
+        return String.format( "%4d. %-12s %7.1f  W/L/D %d/%d/%d",
+                rank, teamName, rating, won, lost, drawn );
+    }
+}
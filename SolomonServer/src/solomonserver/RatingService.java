@@ -0,0 +1,225 @@
+package solomonserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Elo ratings for every team, updated as each match is played to the end,
+ * and the leaderboard they make.
+ *
+ * A match counts as a win, a draw or a loss, by rounds won; a team's
+ * rating moves by K (solomon.rating.k, 32 by default) times the difference
+ * between that result and the one its rating predicted.  Teams are rated
+ * by team name, so a team keeps its rating across connections.  Matches
+ * that were aborted, or killed, are not rated.
+ *
+ * The leaderboard is a concurrent skip list in rating order, so it is read
+ * without locking, and the top k teams cost a search and k steps.  For
+ * rank-of queries, a Fenwick tree counts the teams in each tenth of a
+ * point of rating, so a team's rank is the count of those in higher
+ * buckets (a logarithmic sum) plus the few in its own bucket ahead of it.
+ * Updates (two teams a match) are serialized; reads see the board as of
+ * the latest update, give or take the one in progress.
+ *
+ * Ratings are kept only as long as the server runs.
+ */
+final class RatingService {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    static final double INITIAL_RATING = 1500.0;
+
+    static final double K = Double.parseDouble( System.getProperty( "solomon.rating.k", "32" ) );
+
+    /**
+     * resolution of the rank tree, in buckets per rating point, and the
+     * ratings it covers (ratings beyond are counted at the ends)
+     */
+    private static final int BUCKETS_PER_POINT = 10;
+    private static final int MAX_RATING        = 4000;
+    private static final int BUCKETS           = MAX_RATING * BUCKETS_PER_POINT;
+
+    /**
+     * A team's rating and record; replaced, never changed, once it is on
+     * the board
+     */
+    private static final class Rating {
+        final String teamName;
+        final double rating;
+        final int won;
+        final int lost;
+        final int drawn;
+
+        Rating( String teamName, double rating, int won, int lost, int drawn ) {
+            this.teamName = teamName;
+            this.rating   = rating;
+            this.won      = won;
+            this.lost     = lost;
+            this.drawn    = drawn;
+        }
+
+        int bucket() {
+            return Math.max( 0, Math.min( BUCKETS-1, (int)(rating*BUCKETS_PER_POINT) ) );
+        }
+    }
+
+    /**
+     * highest rating first; equal ratings by team name
+     */
+    private static final Comparator<Rating> BOARD_ORDER = new Comparator<Rating>() {
+        @Override
+        public int compare( Rating a, Rating b ) {
+            int c = Double.compare( b.rating, a.rating );
+            return c!=0 ? c : a.teamName.compareTo( b.teamName );
+        }
+    };
+
+    // after BOARD_ORDER, which the instance needs
+    private static final RatingService _instance = new RatingService();
+
+    static RatingService getInstance() {
+        return _instance;
+    }
+
+    private RatingService() {}
+
+    private final ConcurrentHashMap<String,Rating> ratings = new ConcurrentHashMap<String,Rating>();
+    private final ConcurrentSkipListSet<Rating> board = new ConcurrentSkipListSet<Rating>( BOARD_ORDER );
+    private final RankTree ranks = new RankTree( BUCKETS );
+
+    /**
+     * Rate a match that has been played to the end.
+     */
+    void matchOver( Match match ) {
+        Scorecard score = match.makeScorecard( match.getPlayer1() );
+        if (score.roundsPlayed<score.maxRounds)
+            return;
+        String team1 = match.getPlayer1().getTeamName();
+        String team2 = match.getPlayer2().getTeamName();
+        if (team1.equals( team2 ))
+            return;
+        double result = score.myScore>score.opponentScore ? 1.0
+                      : score.myScore<score.opponentScore ? 0.0
+                      : 0.5;
+        synchronized (this) {
+            Rating r1 = get( team1 );
+            Rating r2 = get( team2 );
+            double expected = 1.0 / (1.0 + Math.pow( 10.0, (r2.rating-r1.rating)/400.0 ));
+            double change = K * (result-expected);
+            replace( r1, new Rating( team1, r1.rating+change, r1.won+(result==1.0 ? 1 : 0),
+                                     r1.lost+(result==0.0 ? 1 : 0), r1.drawn+(result==0.5 ? 1 : 0) ) );
+            replace( r2, new Rating( team2, r2.rating-change, r2.won+(result==0.0 ? 1 : 0),
+                                     r2.lost+(result==1.0 ? 1 : 0), r2.drawn+(result==0.5 ? 1 : 0) ) );
+        }
+        l.log(Level.FINE,"rated {0}: {1} {2}",new Object[] { match, team1, result });
+    }
+
+    /**
+     * @return a team's rating, or a new one (not yet on the board)
+     */
+    private Rating get( String teamName ) {
+        Rating r = ratings.get( teamName );
+        return r!=null ? r : new Rating( teamName, INITIAL_RATING, 0, 0, 0 );
+    }
+
+    /**
+     * Put a new rating on the board in place of the old.  Called locked.
+     */
+    private void replace( Rating old, Rating r ) {
+        if (ratings.containsKey( old.teamName )) {
+            board.remove( old );
+            ranks.add( old.bucket(), -1 );
+        }
+        ratings.put( r.teamName, r );
+        board.add( r );
+        ranks.add( r.bucket(), 1 );
+    }
+
+    /**
+     * @param k how many teams
+     * @return the k highest rated teams, best first
+     */
+    ArrayList<RatingEntry> getLeaderboard( int k ) {
+        ArrayList<RatingEntry> top = new ArrayList<RatingEntry>( Math.max( 0, Math.min( k, ratings.size() ) ) );
+        Iterator<Rating> it = board.iterator();
+        while (top.size()<k && it.hasNext())
+            top.add( entry( it.next(), top.size()+1 ) );
+        return top;
+    }
+
+    /**
+     * @return a team's rating and rank, or null if it has not been rated
+     */
+    RatingEntry getRating( String teamName ) {
+        Rating r = ratings.get( teamName );
+        return r==null ? null : entry( r, rankOf(r) );
+    }
+
+    /**
+     * @return the number of teams rated
+     */
+    int size() {
+        return ratings.size();
+    }
+
+    private int rankOf( Rating r ) {
+        int bucket = r.bucket();
+        int rank = 1 + ranks.countAbove( bucket );
+        // and those ahead of it in its own bucket
+        Iterator<Rating> it = board.headSet( r ).descendingIterator();
+        while (it.hasNext() && it.next().bucket()==bucket)
+            rank++;
+        return rank;
+    }
+
+    private static RatingEntry entry( Rating r, int rank ) {
+        RatingEntry e = new RatingEntry();
+        e.teamName      = r.teamName;
+        e.rating        = r.rating;
+        e.rank          = rank;
+        e.won           = r.won;
+        e.lost          = r.lost;
+        e.drawn         = r.drawn;
+        e.matchesPlayed = r.won + r.lost + r.drawn;
+        return e;
+    }
+
+    /**
+     * A Fenwick (binary indexed) tree of counts by bucket: a count changes,
+     * or the counts above a bucket are summed, in log(buckets) steps.  The
+     * cells are atomic, so readers need no lock.
+     */
+    private static final class RankTree {
+        private final AtomicIntegerArray tree;
+        private final int size;
+
+        RankTree( int size ) {
+            this.size = size;
+            this.tree = new AtomicIntegerArray( size+1 );
+        }
+
+        void add( int bucket, int delta ) {
+            for (int i=bucket+1; i<=size; i+=i&-i)
+                tree.addAndGet( i, delta );
+        }
+
+        /**
+         * @return the count in buckets 0 to bucket inclusive
+         */
+        int countUpTo( int bucket ) {
+            int sum = 0;
+            for (int i=bucket+1; i>0; i-=i&-i)
+                sum += tree.get( i );
+            return sum;
+        }
+
+        int countAbove( int bucket ) {
+            return countUpTo( size-1 ) - countUpTo( bucket );
+        }
+    }
+}
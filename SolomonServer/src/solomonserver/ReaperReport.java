@@ -0,0 +1,48 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * Counts of what the zombie reaper has reclaimed since the server started.
+ */
+public class ReaperReport implements Serializable {
+    
+    /**
+     * connections that missed their keepalive deadline, and were 
+     * marked ZOMBIE
+     */
+    public long zombiesMarked;
+    
+    /**
+     * zombies heard from again during their grace period
+     */
+    public long zombiesRevived;
+    
+    /**
+     * connections removed from the table
+     */
+    public long connectionsReaped;
+    
+    /**
+     * matches in progress that were aborted because a player was reaped
+     */
+    public long matchesAborted;
+    
+    /**
+     * remote objects released by reaping
+     */
+    public long objectsUnexported;
+    
+    /**
+     * connections currently marked ZOMBIE, awaiting the end of their 
+     * grace period
+     */
+    public long zombiesPending;
+    
+    @Override
+    public String toString() {
+        return String.format( "marked %d, revived %d, reaped %d (matches aborted %d, unexported %d), pending %d",
+                zombiesMarked, zombiesRevived, connectionsReaped, 
+                matchesAborted, objectsUnexported, zombiesPending );
+    }
+}
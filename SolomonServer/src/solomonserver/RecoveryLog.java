@@ -0,0 +1,542 @@
+package solomonserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets the server pick up where it left off after a crash: the players it
+ * had, and the matches they were playing, at the rounds they had reached.
+ *
+ * What the server must remember is kept in three places, all in the round
+ * journal's directory:
+ *
+ *   - snapshot-NNNNNN.dat, taken every solomon.snapshotInterval seconds
+ *     (60 by default): every player, and every match in play with its
+ *     round and score;
+ *   - wal-NNNNNN.log, the write-ahead log begun just before that snapshot:
+ *     players joining and leaving, and matches beginning and ending;
+ *   - the RoundJournal itself, which is the log of every round resolved.
+ *
+ * A snapshot is taken without stopping anything: it is read from the
+ * concurrent tables while play goes on, so it is fuzzy, and may or may not
+ * include any change made while it was being taken.  Each such change is
+ * also in the log begun before the snapshot, and replaying the log is
+ * idempotent (a player or match already known is left alone, a round
+ * already counted is skipped), so the snapshot and its log together
+ * always come out right.  Recovery reads only the latest snapshot, its
+ * log, and the journal segments written since, so it takes about as long
+ * as the time since the last snapshot, however long the server ran.
+ *
+ * Recovered players wait for their clients as ZOMBIEs.  A client that
+ * registers again with the same team name, from the same address, gets
+ * its connection back, and finds its match where it was, between rounds;
+ * a round half played when the server died is played again.  Players that
+ * do not come back are reaped, as any zombie is.  In-process strategies
+ * are matched up again with those loaded at startup, by team name.
+ * Tournaments are not recovered, only their matches in play.
+ *
+ * The write-ahead log is written as each change is made, flushed to the
+ * operating system at once, but (like the journal) not forced to disk:
+ * it survives the server dying, not the machine.
+ */
+final class RecoveryLog {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    static final int SNAPSHOT_MAGIC = 0x534E4150;   // "SNAP"
+    static final int LOG_MAGIC      = 0x5357414C;   // "SWAL"
+    static final int VERSION        = 1;
+
+    private static final byte PLAYER_JOINED = 'P';
+    private static final byte PLAYER_LEFT   = 'L';
+    private static final byte MATCH_BEGUN   = 'M';
+    private static final byte MATCH_OVER    = 'X';
+
+    private static RecoveryLog _instance = null;
+
+    /**
+     * Recover what the server had before it last stopped, if anything,
+     * then begin logging: take a snapshot now, and every interval after.
+     * The round journal must already be open; without it there is no
+     * recovery.
+     */
+    static synchronized void open() {
+        if (_instance!=null)
+            return;
+        if ("off".equalsIgnoreCase( System.getProperty("solomon.recovery") ))
+            return;
+        File dir = RoundJournal.getDirectory();
+        if (dir==null) {
+            l.log(Level.WARNING,"the round journal is off, so the server cannot be recovered after a crash");
+            return;
+        }
+        RecoveryLog log = new RecoveryLog( dir );
+        try {
+            log.recover();
+        } catch (Exception e) {
+            l.log(Level.SEVERE,"recovery failed; starting afresh",e);
+        }
+        try {
+            log.snapshot();
+        } catch (IOException e) {
+            l.log(Level.WARNING,"cannot write a snapshot; the server cannot be recovered after a crash",e);
+            return;
+        }
+        _instance = log;
+        log.startSnapshots( Integer.getInteger( "solomon.snapshotInterval", 60 ) );
+    }
+
+    /* *** THE LOG *** */
+
+    static void playerJoined( Connection player ) {
+        RecoveryLog log = _instance;
+        if (log!=null)
+            log.append( PLAYER_JOINED, player.getID(), 0, 0, 0, player.getTeamName(), player.getOrigin(),
+                        player.getStrategy()!=null );
+    }
+
+    static void playerLeft( Connection player ) {
+        RecoveryLog log = _instance;
+        if (log!=null)
+            log.append( PLAYER_LEFT, player.getID(), 0, 0, 0, null, null, false );
+    }
+
+    static void matchBegun( Match match ) {
+        RecoveryLog log = _instance;
+        if (log!=null)
+            log.append( MATCH_BEGUN, match.getID(), match.getPlayer1().getID(), match.getPlayer2().getID(),
+                        match.getMaxRounds(), null, null, false );
+    }
+
+    static void matchOver( Match match ) {
+        RecoveryLog log = _instance;
+        if (log!=null)
+            log.append( MATCH_OVER, match.getID(), 0, 0, 0, null, null, false );
+    }
+
+    private final File dir;
+
+    /**
+     * the log being written, and its number (that of the snapshot taken
+     * just after it was begun); guarded by this
+     */
+    private DataOutputStream out = null;
+    private int logNumber = 0;
+
+    private RecoveryLog( File dir ) {
+        this.dir = dir;
+    }
+
+    private synchronized void append( byte type, int id, int a, int b, int c,
+                                      String teamName, String origin, boolean strategy ) {
+        if (out==null)
+            return;
+        try {
+            out.writeByte( type );
+            out.writeInt( id );
+            switch (type) {
+                case PLAYER_JOINED:
+                    out.writeUTF( teamName );
+                    out.writeUTF( origin==null ? "" : origin );
+                    out.writeBoolean( strategy );
+                    break;
+                case MATCH_BEGUN:
+                    out.writeInt( a );
+                    out.writeInt( b );
+                    out.writeInt( c );
+                    break;
+            }
+            out.flush();
+        } catch (IOException e) {
+            l.log(Level.SEVERE,"cannot write the recovery log; the server cannot be recovered after a crash",e);
+            closeLog();
+        }
+    }
+
+    private void closeLog() {
+        try {
+            if (out!=null)
+                out.close();
+        } catch (IOException e) {}
+        out = null;
+    }
+
+    /* *** SNAPSHOTS *** */
+
+    private void startSnapshots( int intervalSeconds ) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "solomon-snapshot" );
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        timer.scheduleWithFixedDelay( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    snapshot();
+                } catch (Exception e) {
+                    // never let an exception cancel the periodic task
+                    l.log(Level.WARNING,"error taking a snapshot",e);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Begin a new log, then write a snapshot, and delete the snapshot and
+     * logs it makes obsolete.
+     */
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+        int number;
+        synchronized (this) {
+            number = Math.max( logNumber, lastFileNumber( "wal-", ".log" ) ) + 1;
+            DataOutputStream log = new DataOutputStream( new BufferedOutputStream(
+                    new FileOutputStream( file( "wal-", number, ".log" ) ) ) );
+            log.writeInt( LOG_MAGIC );
+            log.writeInt( VERSION );
+            log.flush();
+            closeLog();
+            out = log;
+            logNumber = number;
+        }
+        // every round from here on is in this segment or a later one
+        int segment = RoundJournal.getSegmentNumber();
+
+        ArrayList<Connection> players = new ArrayList<Connection>( ConnectionTable.getInstance().getPlayers() );
+        ArrayList<Match> matches = MatchTable.getInstance().getMatchList( MatchTable.Filter.IN_PLAY );
+
+        File tmp = new File( dir, "snapshot.tmp" );
+        FileOutputStream fos = new FileOutputStream( tmp );
+        DataOutputStream snap = new DataOutputStream( new BufferedOutputStream( fos ) );
+        try {
+            snap.writeInt( SNAPSHOT_MAGIC );
+            snap.writeInt( VERSION );
+            snap.writeInt( segment );
+            snap.writeInt( Match.getLastID() );
+            snap.writeInt( players.size() );
+            for (Connection player : players) {
+                snap.writeInt( player.getID() );
+                snap.writeUTF( player.getTeamName() );
+                snap.writeUTF( player.getOrigin()==null ? "" : player.getOrigin() );
+                snap.writeBoolean( player.getStrategy()!=null );
+            }
+            snap.writeInt( matches.size() );
+            for (Match match : matches) {
+                int[] progress = match.getProgress();
+                snap.writeInt( match.getID() );
+                snap.writeInt( match.getPlayer1().getID() );
+                snap.writeInt( match.getPlayer2().getID() );
+                snap.writeInt( match.getMaxRounds() );
+                for (int p : progress)
+                    snap.writeInt( p );
+            }
+            snap.flush();
+            fos.getFD().sync();
+        } finally {
+            snap.close();
+        }
+        File target = file( "snapshot-", number, ".dat" );
+        if (!tmp.renameTo( target ))
+            throw new IOException( "cannot rename " + tmp + " to " + target );
+
+        // what came before is now superseded
+        String[] names = dir.list();
+        if (names!=null) {
+            for (String name : names) {
+                int n = fileNumber( name, "snapshot-", ".dat" );
+                if (n<0)
+                    n = fileNumber( name, "wal-", ".log" );
+                if (n>=0 && n<number)
+                    new File( dir, name ).delete();
+            }
+        }
+        l.log(Level.FINE,"snapshot {0}: {1} players, {2} matches in play, in {3} ms",
+                new Object[] { number, players.size(), matches.size(), (System.nanoTime()-start)/1000000L });
+    }
+
+    private File file( String prefix, int number, String suffix ) {
+        return new File( dir, String.format( "%s%06d%s", prefix, number, suffix ) );
+    }
+
+    private int lastFileNumber( String prefix, String suffix ) {
+        int last = 0;
+        String[] names = dir.list();
+        if (names!=null)
+            for (String name : names)
+                last = Math.max( last, fileNumber( name, prefix, suffix ) );
+        return last;
+    }
+
+    private static int fileNumber( String name, String prefix, String suffix ) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix))
+            return -1;
+        try {
+            return Integer.parseInt( name.substring( prefix.length(), name.length()-suffix.length() ) );
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /* *** RECOVERY *** */
+
+    private static class PlayerRecord {
+        int id;
+        String teamName;
+        String origin;
+        boolean strategy;
+    }
+
+    private static class MatchRecord {
+        int id;
+        int player1;
+        int player2;
+        int maxRounds;
+        int round;
+        int score1;
+        int score2;
+        int g1 = -1;
+        int g2 = -1;
+
+        /**
+         * gestures of rounds found in the journal, one byte a round:
+         * player one's ordinal+1 in the low nibble, player two's in the
+         * high; null if none were found
+         */
+        byte[] journalled;
+    }
+
+    private final LinkedHashMap<Integer,PlayerRecord> players = new LinkedHashMap<Integer,PlayerRecord>();
+    private final LinkedHashMap<Integer,MatchRecord> matches = new LinkedHashMap<Integer,MatchRecord>();
+    private int lastMatchID = 0;
+
+    /**
+     * Rebuild the players and matches in play from the latest snapshot,
+     * its log and the journal.
+     */
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        int number = lastFileNumber( "snapshot-", ".dat" );
+        int lastLog = lastFileNumber( "wal-", ".log" );
+        if (number==0 && lastLog==0)
+            return;
+
+        int segment = 1;
+        if (number>0)
+            segment = readSnapshot( file( "snapshot-", number, ".dat" ) );
+        for (int n=Math.max( 1, number ); n<=lastLog; n++) {
+            File log = file( "wal-", n, ".log" );
+            if (log.exists())
+                replayLog( log );
+        }
+        long rounds = replayJournal( segment );
+
+        int restoredPlayers = 0;
+        int restoredMatches = 0;
+        HashMap<Integer,Connection> connections = new HashMap<Integer,Connection>();
+        ConnectionTable table = ConnectionTable.getInstance();
+        for (PlayerRecord p : players.values()) {
+            Connection c = p.strategy ? findStrategy( p.teamName ) : restorePlayer( p );
+            if (c!=null) {
+                connections.put( p.id, c );
+                restoredPlayers++;
+            }
+        }
+        for (MatchRecord m : matches.values()) {
+            Connection p1 = connections.get( m.player1 );
+            Connection p2 = connections.get( m.player2 );
+            if (p1==null || p2==null || m.round>=m.maxRounds) {
+                l.log(Level.INFO,"match {0} not recovered",m.id);
+                continue;
+            }
+            Match match = Match.restore( m.id, p1, p2, m.maxRounds, m.round, m.score1, m.score2, m.g1, m.g2 );
+            p1.resumeMatch( match );
+            p2.resumeMatch( match );
+            if (p1.getStrategy()!=null)
+                p1.changeState( ConnectionState.MATCH_IN_PLAY );
+            if (p2.getStrategy()!=null)
+                p2.changeState( ConnectionState.MATCH_IN_PLAY );
+            MatchTable.getInstance().addMatch( match );
+            restoredMatches++;
+            if (p1.getStrategy()!=null && p2.getStrategy()!=null)
+                match.playOut();
+        }
+        Match.reserveIDs( lastMatchID );
+        l.log(Level.INFO,"recovered {0} players and {1} matches in play (replaying {2} rounds) in {3} ms; {4} players in the table",
+                new Object[] { restoredPlayers, restoredMatches, rounds,
+                               (System.nanoTime()-start)/1000000L, table.getPlayers().size() });
+    }
+
+    /**
+     * @return the journal segment from which to replay rounds
+     */
+    private int readSnapshot( File f ) throws IOException {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(f) ) );
+        try {
+            if (in.readInt()!=SNAPSHOT_MAGIC || in.readInt()!=VERSION)
+                throw new IOException( f + " is not a snapshot" );
+            int segment = in.readInt();
+            lastMatchID = in.readInt();
+            for (int n=in.readInt(); n>0; n--) {
+                PlayerRecord p = new PlayerRecord();
+                p.id       = in.readInt();
+                p.teamName = in.readUTF();
+                p.origin   = in.readUTF();
+                p.strategy = in.readBoolean();
+                players.put( p.id, p );
+            }
+            for (int n=in.readInt(); n>0; n--) {
+                MatchRecord m = new MatchRecord();
+                m.id        = in.readInt();
+                m.player1   = in.readInt();
+                m.player2   = in.readInt();
+                m.maxRounds = in.readInt();
+                m.round     = in.readInt();
+                m.score1    = in.readInt();
+                m.score2    = in.readInt();
+                m.g1        = in.readInt();
+                m.g2        = in.readInt();
+                matches.put( m.id, m );
+            }
+            return segment;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Apply a log to what has been recovered so far.  A log cut short by
+     * the crash is read as far as it goes.
+     */
+    private void replayLog( File f ) throws IOException {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(f) ) );
+        try {
+            if (in.readInt()!=LOG_MAGIC || in.readInt()!=VERSION)
+                throw new IOException( f + " is not a recovery log" );
+            for (;;) {
+                byte type = in.readByte();
+                int id = in.readInt();
+                switch (type) {
+                    case PLAYER_JOINED: {
+                        PlayerRecord p = new PlayerRecord();
+                        p.id       = id;
+                        p.teamName = in.readUTF();
+                        p.origin   = in.readUTF();
+                        p.strategy = in.readBoolean();
+                        if (!players.containsKey(id))
+                            players.put( id, p );
+                        break;
+                    }
+                    case PLAYER_LEFT:
+                        players.remove( id );
+                        break;
+                    case MATCH_BEGUN: {
+                        MatchRecord m = new MatchRecord();
+                        m.id        = id;
+                        m.player1   = in.readInt();
+                        m.player2   = in.readInt();
+                        m.maxRounds = in.readInt();
+                        if (!matches.containsKey(id))
+                            matches.put( id, m );
+                        lastMatchID = Math.max( lastMatchID, id );
+                        break;
+                    }
+                    case MATCH_OVER:
+                        matches.remove( id );
+                        break;
+                    default:
+                        throw new IOException( f + ": unknown record " + type );
+                }
+            }
+        } catch (EOFException e) {
+            // the end of the log, or of what was written of it
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Bring the recovered matches up to the latest rounds in the journal.
+     *
+     * @return the number of rounds applied
+     */
+    private long replayJournal( int fromSegment ) throws IOException {
+        RoundJournalReader reader = new RoundJournalReader( dir, fromSegment );
+        try {
+            while (reader.next()) {
+                MatchRecord m = matches.get( reader.getMatchID() );
+                int round = reader.getRound();
+                if (m==null || round<=m.round || round>m.maxRounds)
+                    continue;
+                if (m.journalled==null)
+                    m.journalled = new byte[m.maxRounds+1];
+                m.journalled[round] = (byte)( (reader.getGesture1().ordinal()+1)
+                                            | ((reader.getGesture2().ordinal()+1)<<4) );
+            }
+        } finally {
+            reader.close();
+        }
+        // rounds resolved at about the same time may be journalled out of
+        // order: take each match as far as its rounds run unbroken
+        long applied = 0;
+        for (MatchRecord m : matches.values()) {
+            if (m.journalled==null)
+                continue;
+            while (m.round<m.maxRounds && m.journalled[m.round+1]!=0) {
+                int g = m.journalled[++m.round];
+                m.g1 = (g & 0xF) - 1;
+                m.g2 = ((g>>4) & 0xF) - 1;
+                switch (Match.winnerOf( m.g1, m.g2 )) {
+                    case Match.P1_WINS: m.score1++; break;
+                    case Match.P2_WINS: m.score2++; break;
+                }
+                applied++;
+            }
+            m.journalled = null;
+        }
+        return applied;
+    }
+
+    private Connection restorePlayer( PlayerRecord p ) {
+        try {
+            Connection c = new Connection( p.id, p.teamName, p.origin );
+            if (ConnectionTable.getInstance().addPlayer( c )==null)
+                return null;
+            return c;
+        } catch (RemoteException e) {
+            l.log(Level.WARNING,"cannot restore player "+p.teamName,e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the in-process strategy of this name loaded at startup, or
+     * null
+     */
+    private Connection findStrategy( String teamName ) {
+        for (Connection c : ConnectionTable.getInstance().getPlayers())
+            if (c.getStrategy()!=null && c.getTeamName().equals( teamName ))
+                return c;
+        return null;
+    }
+}
@@ -1,16 +1,20 @@
 package solomonserver;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
-public class Registrar extends UnicastRemoteObject implements IRegistrar {
+public class Registrar extends UnicastRemoteObject implements IRegistrar, RegistrarMBean {
     final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
     
     /**
@@ -25,6 +29,13 @@ public class Registrar extends UnicastRemoteObject implements IRegistrar {
      */
     static private Registrar registrar = null;
     
+    /**
+     * registrations, by RMI and NIO, and how many of them were reclaimed
+     */
+    private static final AtomicLong registrations = new AtomicLong();
+    private static final AtomicLong reclaimed     = new AtomicLong();
+    private static final RateMeter registrationRate = new RateMeter();
+    
     private Registrar() throws RemoteException 
     {
     }
@@ -52,6 +63,22 @@ public class Registrar extends UnicastRemoteObject implements IRegistrar {
         Registry registry = null;
         registry = LocateRegistry.createRegistry( PORT );
         
+        l.log(Level.INFO,"blocking work runs on {0} threads",
+                ServerThreads.isVirtual() ? "virtual" : "platform");
+        
+        // journal every round played, unless disabled
+        RoundJournal.open();
+        
+        // add the server-hosted players, then anything recovered from 
+        // before a crash (which may include matches with those players), 
+        // before any client can register
+        StrategyLoader.loadPlugins();
+        RecoveryLog.open();
+        
+        // publish the counters to local JMX tooling, unless disabled
+        if (!"off".equalsIgnoreCase( System.getProperty("solomon.jmx") ))
+            registerMBeans();
+        
         // register this server object in RMI registry
         try {
             
@@ -79,8 +106,67 @@ public class Registrar extends UnicastRemoteObject implements IRegistrar {
         } catch (Exception e) {
             l.log(Level.SEVERE,"fatal error during initialization",e);
         }
+        
+        // open the binary transport alongside RMI, unless disabled
+        int nioPort = Integer.getInteger( "solomon.nioPort", WireProtocol.PORT );
+        if (nioPort>=0) {
+            try {
+                NioTransport.start( nioPort );
+            } catch (IOException e) {
+                l.log(Level.WARNING,"NIO transport not started",e);
+            }
+        }
+    }
+
+    /**
+     * Publish the connection table, the match table and the registrar as 
+     * platform MBeans, under the solomonserver domain.
+     */
+    private void registerMBeans()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean( ConnectionTable.getInstance(), 
+                    new ObjectName("solomonserver:type=ConnectionTable") );
+            server.registerMBean( MatchTable.getInstance(), 
+                    new ObjectName("solomonserver:type=MatchTable") );
+            server.registerMBean( this, 
+                    new ObjectName("solomonserver:type=Registrar") );
+        } catch (Exception e) {
+            l.log(Level.WARNING,"JMX beans not registered",e);
+        }
     }
     
+    /**
+     * Count a registration, by either transport.
+     * 
+     * @param reclaim true if the client came back to a recovered connection
+     */
+    static void countRegistration( boolean reclaim )
+    {
+        registrations.incrementAndGet();
+        if (reclaim)
+            reclaimed.incrementAndGet();
+    }
+
+    @Override
+    public long getRegistrationCount()
+    {
+        return registrations.get();
+    }
+
+    @Override
+    public long getReclaimedCount()
+    {
+        return reclaimed.get();
+    }
+
+    @Override
+    public double getRegistrationsPerSecond()
+    {
+        return registrationRate.rate( registrations.get() );
+    }
+
     /**
      * Main entry point
      * 
@@ -127,8 +213,16 @@ public class Registrar extends UnicastRemoteObject implements IRegistrar {
         }
 
         
-        Connection conn = new Connection( teamName, response, origin );
+        // a client coming back to a recovered server resumes where it was
+        Connection conn = ConnectionTable.getInstance().reclaimPlayer( teamName, origin, response );
+        if (conn!=null) {
+            countRegistration( true );
+            return conn;
+        }
+        
+        conn = new Connection( teamName, response, origin );
         l.log(Level.INFO,"registered",conn);
+        countRegistration( false );
         
         // TODO fail here if ConnTable full
         ConnectionTable.getInstance().addPlayer(conn);
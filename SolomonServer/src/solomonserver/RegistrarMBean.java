@@ -0,0 +1,22 @@
+package solomonserver;
+
+/**
+ * The registrar, as seen through JMX: clients registering, by RMI or by
+ * the binary transport.
+ */
+public interface RegistrarMBean {
+
+    /**
+     * @return registrations since the server started, including clients
+     * returning to a recovered server
+     */
+    long getRegistrationCount();
+
+    /**
+     * @return clients that came back to a connection recovered after a
+     * crash
+     */
+    long getReclaimedCount();
+
+    double getRegistrationsPerSecond();
+}
@@ -0,0 +1,354 @@
+package solomonserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of every round resolved on the server, in
+ * memory-mapped segment files, for offline analysis.
+ *
+ * Recording a round is a claim and two stores in a ring buffer, on the
+ * thread that resolved it; nothing is written to disk there.  A single
+ * journal thread drains the ring every millisecond or so, and copies the
+ * rounds, a batch at a time, into the mapped segment.  Should the ring
+ * fill (the disk falling far behind), a recording thread waits for room
+ * rather than lose a round.
+ *
+ * Each segment is a file of at most solomon.journal.segmentSize bytes
+ * (64MB by default), named rounds-NNNNNN.srj.  It has a HEADER_SIZE header:
+ *
+ *   int  MAGIC
+ *   int  VERSION
+ *   int  RECORD_SIZE
+ *   int  records in the segment, updated after every batch
+ *   long time of the segment's first record, in microseconds since 1970
+ *
+ * followed by RECORD_SIZE byte records, big-endian:
+ *
+ *   int  match ID
+ *   int  bits  0-15  round (from 1)
+ *        bits 16-18  player one's gesture (ordinal)
+ *        bits 19-21  player two's gesture (ordinal)
+ *   int  microseconds since the previous record in the segment
+ *
+ * A new segment is begun when one is full, or when the time since the
+ * previous round will not fit its field (over an hour).  RoundJournalReader
+ * reads the segments back in order.
+ *
+ * The journal is opened by the server, in the directory named by
+ * solomon.journal ("journal" by default; "off" for none).  Until it is
+ * open, recording a round does nothing.
+ */
+final class RoundJournal implements Runnable {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    static final int MAGIC       = 0x534A524E;     // "SJRN"
+    static final int VERSION     = 1;
+    static final int HEADER_SIZE = 24;
+    static final int RECORD_SIZE = 12;
+    static final String SUFFIX   = ".srj";
+
+    static final int HEADER_RECORDS = 12;
+    static final int HEADER_BASE    = 16;
+
+    static final int ROUND_MASK = 0xFFFF;
+    static final int G1_SHIFT   = 16;
+    static final int G2_SHIFT   = 19;
+    static final int G_MASK     = 0x7;
+
+    /**
+     * slots in the ring; a power of two
+     */
+    private static final int RING_SIZE = 1<<16;
+
+    private static volatile RoundJournal _instance = null;
+
+    /**
+     * Open the journal, as configured by the system properties, and start
+     * its thread.
+     */
+    static synchronized void open() {
+        if (_instance!=null)
+            return;
+        String dir = System.getProperty( "solomon.journal", "journal" );
+        if ("off".equalsIgnoreCase(dir))
+            return;
+        long segmentSize = Long.getLong( "solomon.journal.segmentSize", 64L<<20 );
+        try {
+            _instance = new RoundJournal( new File(dir), segmentSize );
+            l.log(Level.INFO,"journalling rounds to {0}",_instance.dir.getAbsolutePath());
+            Runtime.getRuntime().addShutdownHook( new Thread( "solomon-journal-close" ) {
+                @Override
+                public void run() {
+                    close();
+                }
+            });
+        } catch (IOException e) {
+            l.log(Level.WARNING,"cannot open the round journal; rounds will not be journalled",e);
+        }
+    }
+
+    /**
+     * Write out everything recorded, and close the journal.
+     */
+    static synchronized void close() {
+        RoundJournal journal = _instance;
+        if (journal==null)
+            return;
+        _instance = null;
+        journal.shutdown();
+    }
+
+    /**
+     * Journal a resolved round.  Returns at once; does nothing if the
+     * journal is not open.
+     *
+     * @param matchID the match
+     * @param round the round, from 1
+     * @param g1 player one's gesture ordinal
+     * @param g2 player two's gesture ordinal
+     */
+    static void record( int matchID, int round, int g1, int g2 ) {
+        RoundJournal journal = _instance;
+        if (journal!=null)
+            journal.append( matchID, (round & ROUND_MASK) | (g1<<G1_SHIFT) | (g2<<G2_SHIFT) );
+    }
+
+    /**
+     * @return the open journal's directory, or null if it is not open
+     */
+    static File getDirectory() {
+        RoundJournal journal = _instance;
+        return journal==null ? null : journal.dir;
+    }
+
+    /**
+     * @return the number of the segment now being written: every round 
+     * recorded from now on goes in this segment or a later one.  0 if the 
+     * journal is not open.
+     */
+    static int getSegmentNumber() {
+        RoundJournal journal = _instance;
+        return journal==null ? 0 : Math.max( 1, journal.segmentNumber );
+    }
+
+    /* *** RING *** */
+
+    /**
+     * A bounded multi-producer, single-consumer ring.  Slot i of the ring
+     * holds the records whose sequence number is i modulo its size;
+     * sequence[i] says whose turn it is: the sequence number a producer
+     * may fill it for, or that plus one once it is filled, which the
+     * journal thread may drain.
+     */
+    private final AtomicLongArray sequence = new AtomicLongArray( RING_SIZE );
+    private final long[] records = new long[RING_SIZE];
+    private final long[] times = new long[RING_SIZE];
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0;      // journal thread only
+
+    /**
+     * for converting System.nanoTime() to the time of day
+     */
+    private final long originMicros = System.currentTimeMillis() * 1000L;
+    private final long originNanos  = System.nanoTime();
+
+    private void append( int matchID, int roundAndGestures ) {
+        long now = System.nanoTime();
+        long seq;
+        int slot;
+        for (;;) {
+            seq = tail.get();
+            slot = (int)seq & (RING_SIZE-1);
+            long turn = sequence.get( slot );
+            if (turn==seq) {
+                if (tail.compareAndSet( seq, seq+1 ))
+                    break;
+            }
+            else if (turn<seq)
+                LockSupport.parkNanos( 1000L );     // full: wait for the journal thread
+        }
+        records[slot] = ((long)matchID<<32) | (roundAndGestures & 0xFFFFFFFFL);
+        times[slot]   = now;
+        sequence.lazySet( slot, seq+1 );
+    }
+
+    /* *** SEGMENTS *** */
+
+    private final File dir;
+    private final long segmentSize;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean failed = false;
+
+    /**
+     * the segment being written (or, before the first, the latest one 
+     * already in the directory); written by the journal thread only
+     */
+    private volatile int segmentNumber;
+    private RandomAccessFile file = null;
+    private MappedByteBuffer segment = null;
+    private int segmentRecords;
+    private long lastMicros;
+
+    private RoundJournal( File dir, long segmentSize ) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException( "cannot create " + dir );
+        this.dir = dir;
+        this.segmentSize = Math.max( HEADER_SIZE+RECORD_SIZE, Math.min( segmentSize, Integer.MAX_VALUE ) );
+        this.segmentNumber = lastSegmentNumber( dir );
+        for (int i=0; i<RING_SIZE; i++)
+            sequence.set( i, i );
+        // a platform thread: it is busy, not parked on a client
+        thread = new Thread( this, "solomon-journal" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * @return the number of the latest segment in a directory, or 0
+     */
+    static int lastSegmentNumber( File dir ) {
+        int last = 0;
+        String[] names = dir.list();
+        if (names!=null) {
+            for (String name : names) {
+                int n = segmentNumberOf( name );
+                if (n>last)
+                    last = n;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return the segment number in a segment file's name, or -1 if it is
+     * not a segment file
+     */
+    static int segmentNumberOf( String name ) {
+        if (!name.startsWith("rounds-") || !name.endsWith(SUFFIX))
+            return -1;
+        try {
+            return Integer.parseInt( name.substring( 7, name.length()-SUFFIX.length() ) );
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static File segmentFile( File dir, int number ) {
+        return new File( dir, String.format( "rounds-%06d%s", number, SUFFIX ) );
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                if (drain()==0)
+                    LockSupport.parkNanos( 1000000L );
+            } catch (Exception e) {
+                l.log(Level.SEVERE,"round journal failed; rounds will not be journalled",e);
+                _instance = null;
+                // go on draining, so no one waits on a full ring
+                failed = true;
+            }
+        }
+        try {
+            drain();
+            if (!failed)
+                endSegment();
+        } catch (IOException e) {
+            l.log(Level.WARNING,"error closing the round journal",e);
+        }
+    }
+
+    /**
+     * Copy every filled slot, in order, into the segment.
+     *
+     * @return the number of rounds copied
+     */
+    private int drain() throws IOException {
+        int count = 0;
+        for (;;) {
+            int slot = (int)head & (RING_SIZE-1);
+            if (sequence.get( slot )!=head+1)
+                break;
+            if (!failed)
+                write( records[slot], originMicros + (times[slot]-originNanos)/1000L );
+            sequence.lazySet( slot, head+RING_SIZE );
+            head++;
+            count++;
+        }
+        if (count>0 && !failed)
+            segment.putInt( HEADER_RECORDS, segmentRecords );
+        return count;
+    }
+
+    private void write( long record, long micros ) throws IOException {
+        // rounds are stamped before they take their place in the ring, so
+        // one may be a little earlier than the one before it
+        long delta = Math.max( 0, micros - lastMicros );
+        if (segment==null || segment.remaining()<RECORD_SIZE || delta>0xFFFFFFFFL) {
+            beginSegment( micros );
+            delta = 0;
+        }
+        segment.putLong( record );
+        segment.putInt( (int)delta );
+        segmentRecords++;
+        lastMicros += delta;
+    }
+
+    private void beginSegment( long micros ) throws IOException {
+        endSegment();
+        File f = segmentFile( dir, ++segmentNumber );
+        file = new RandomAccessFile( f, "rw" );
+        file.setLength( 0 );
+        segment = file.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, segmentSize );
+        segment.putInt( MAGIC );
+        segment.putInt( VERSION );
+        segment.putInt( RECORD_SIZE );
+        segment.putInt( 0 );
+        segment.putLong( micros );
+        segmentRecords = 0;
+        lastMicros = micros;
+        l.log(Level.FINE,"new journal segment {0}",f.getName());
+    }
+
+    /**
+     * Flush the current segment, and trim it to the records written.
+     */
+    private void endSegment() throws IOException {
+        if (segment==null)
+            return;
+        segment.putInt( HEADER_RECORDS, segmentRecords );
+        segment.force();
+        long length = HEADER_SIZE + (long)segmentRecords*RECORD_SIZE;
+        segment = null;
+        try {
+            // trimming a file that is still mapped fails on some platforms;
+            // the header's record count is what readers go by, regardless
+            file.setLength( length );
+        } catch (IOException e) {
+            l.log(Level.FINE,"journal segment left at full size",e);
+        }
+        file.close();
+        file = null;
+    }
+
+    private void shutdown() {
+        running = false;
+        LockSupport.unpark( thread );
+        try {
+            thread.join( 5000 );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
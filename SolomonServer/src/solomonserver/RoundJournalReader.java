@@ -0,0 +1,167 @@
+package solomonserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static solomonserver.RoundJournal.*;
+
+/**
+ * Reads a directory of RoundJournal segments back, a round at a time, from
+ * the oldest segment to the newest.  Segments are mapped, so even millions
+ * of rounds are read at about the speed of the disk.  A reader may follow
+ * a journal the server is still writing: it sees the rounds written out
+ * as of when it came to each segment.
+ *
+ *     RoundJournalReader r = new RoundJournalReader( new File("journal") );
+ *     while (r.next())
+ *         count( r.getMatchID(), r.getGesture1(), r.getGesture2() );
+ *     r.close();
+ *
+ * Run from the command line, it prints the journal as comma separated
+ * values: time (microseconds since 1970), match, round, and the gestures.
+ */
+public class RoundJournalReader {
+
+    private static final Gesture[] GESTURES = Gesture.values();
+
+    private final File dir;
+    private final int[] segments;
+    private int nextSegment = 0;
+
+    private RandomAccessFile file = null;
+    private MappedByteBuffer segment = null;
+    private int remaining = 0;
+
+    private int matchID;
+    private int round;
+    private Gesture gesture1;
+    private Gesture gesture2;
+    private long micros;
+
+    /**
+     * @param dir the journal directory
+     */
+    public RoundJournalReader( File dir ) throws IOException {
+        this( dir, 0 );
+    }
+
+    /**
+     * @param dir the journal directory
+     * @param fromSegment the number of the first segment to read
+     */
+    public RoundJournalReader( File dir, int fromSegment ) throws IOException {
+        if (!dir.isDirectory())
+            throw new IOException( dir + " is not a directory" );
+        this.dir = dir;
+        String[] names = dir.list();
+        int[] numbers = new int[names.length];
+        int n = 0;
+        for (String name : names) {
+            int number = segmentNumberOf( name );
+            if (number>=fromSegment)
+                numbers[n++] = number;
+        }
+        segments = Arrays.copyOf( numbers, n );
+        Arrays.sort( segments );
+    }
+
+    /**
+     * Advance to the next round.
+     *
+     * @return false if there are no more
+     */
+    public boolean next() throws IOException {
+        while (remaining==0) {
+            if (!openNextSegment())
+                return false;
+        }
+        remaining--;
+        long record = segment.getLong();
+        micros += segment.getInt() & 0xFFFFFFFFL;
+        int bits = (int)record;
+        matchID  = (int)(record>>>32);
+        round    = bits & ROUND_MASK;
+        gesture1 = GESTURES[(bits>>>G1_SHIFT) & G_MASK];
+        gesture2 = GESTURES[(bits>>>G2_SHIFT) & G_MASK];
+        return true;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        close();
+        if (nextSegment>=segments.length)
+            return false;
+        File f = segmentFile( dir, segments[nextSegment++] );
+        file = new RandomAccessFile( f, "r" );
+        long length = file.length();
+        if (length<HEADER_SIZE)
+            return true;    // an empty segment: go on to the next
+        segment = file.getChannel().map( FileChannel.MapMode.READ_ONLY, 0, length );
+        if (segment.getInt()!=MAGIC || segment.getInt()!=VERSION || segment.getInt()!=RECORD_SIZE)
+            throw new IOException( f + " is not a round journal segment" );
+        int records = segment.getInt();
+        micros = segment.getLong();
+        // a segment being written may be longer than its records so far
+        remaining = (int)Math.min( records, (length-HEADER_SIZE)/RECORD_SIZE );
+        return true;
+    }
+
+    public int getMatchID() {
+        return matchID;
+    }
+
+    /**
+     * @return the round, from 1
+     */
+    public int getRound() {
+        return round;
+    }
+
+    public Gesture getGesture1() {
+        return gesture1;
+    }
+
+    public Gesture getGesture2() {
+        return gesture2;
+    }
+
+    /**
+     * @return when the round was resolved, in microseconds since 1970
+     */
+    public long getTimeMicros() {
+        return micros;
+    }
+
+    public void close() throws IOException {
+        segment = null;
+        remaining = 0;
+        if (file!=null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    /**
+     * Print a journal as comma separated values.
+     *
+     * @param args the journal directory (by default, "journal")
+     */
+    public static void main( String[] args ) throws IOException {
+        RoundJournalReader reader = new RoundJournalReader( new File( args.length>0 ? args[0] : "journal" ) );
+        StringBuilder line = new StringBuilder();
+        System.out.println( "time,match,round,gesture1,gesture2" );
+        while (reader.next()) {
+            line.setLength( 0 );
+            line.append( reader.getTimeMicros() ).append( ',' )
+                .append( reader.getMatchID() ).append( ',' )
+                .append( reader.getRound() ).append( ',' )
+                .append( reader.getGesture1() ).append( ',' )
+                .append( reader.getGesture2() );
+            System.out.println( line );
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,64 @@
+package solomonserver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Every player meets every other player once.
+ *
+ * The schedule is built by the circle method: n-1 rounds (n, for an odd
+ * number of players) in each of which every player meets one other.  The
+ * dispatcher takes pairings in that order, but starts any whose players are
+ * free, so a quick match lets its players go on to their next ones without
+ * waiting for the round to finish.
+ */
+class RoundRobinTournament extends Tournament {
+
+    /**
+     * pairings not yet started, in schedule order; guarded by the tournament
+     */
+    private final LinkedList<Pairing> pending = new LinkedList<Pairing>();
+    private final int scheduled;
+
+    RoundRobinTournament( List<Connection> entrants, int roundsPerMatch, int parallelism ) {
+        super( "round robin", entrants, roundsPerMatch, parallelism );
+
+        // circle method: hold the first seat fixed, and rotate the others
+        // one seat per round; a null seat is a bye
+        List<Connection> seats = new ArrayList<Connection>( entrants );
+        if (seats.size()%2==1)
+            seats.add( null );
+        int n = seats.size();
+        for (int round=0; round<n-1; round++) {
+            for (int i=0; i<n/2; i++) {
+                Connection a = seats.get(i);
+                Connection b = seats.get(n-1-i);
+                if (a!=null && b!=null)
+                    pending.add( round%2==0 ? new Pairing(a,b) : new Pairing(b,a) );
+            }
+            seats.add( 1, seats.remove(n-1) );
+        }
+        scheduled = pending.size();
+    }
+
+    @Override
+    protected Pairing nextPairing( Set<Connection> busy ) {
+        Iterator<Pairing> it = pending.iterator();
+        while (it.hasNext()) {
+            Pairing p = it.next();
+            if (!busy.contains(p.player1) && !busy.contains(p.player2)) {
+                it.remove();
+                return p;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected int getScheduledMatches() {
+        return scheduled;
+    }
+}
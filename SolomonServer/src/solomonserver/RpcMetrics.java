@@ -0,0 +1,73 @@
+package solomonserver;
+
+import java.util.ArrayList;
+
+/**
+ * Latency histograms for every operation a client calls on the server, 
+ * and every callback the server makes to a client, as timed on the 
+ * server.  An incoming call is timed from when it reaches its Connection 
+ * to when it returns (so it includes any wait for the other player, but 
+ * not the transport); a callback, for the whole round trip to the client.
+ * Callbacks to in-process strategies are not timed.
+ * 
+ * Timing a call costs two reads of System.nanoTime() and an atomic 
+ * increment.
+ */
+final class RpcMetrics {
+    
+    enum Op {
+        /* called by clients */
+        REQUEST_REMOTE_MATCH,
+        DO_GESTURE,
+        ABORTING_MATCH,
+        GET_SCORECARD,
+        AWAIT_SCORECARD,
+        PLAY_ROUND,
+        SUBMIT_GESTURES,
+        GET_PLAYER_LIST,
+        GET_PLAYER_LIST_SINCE,
+        KEEP_ALIVE,
+        
+        /* callbacks to clients */
+        NOTIFY_SCORE,
+        REQUEST_TO_INITIATE_MATCH,
+        ABORT_MATCH,
+        NOTIFY_ACTION,
+    }
+    
+    private static final Op[] OPS = Op.values();
+    
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[OPS.length];
+    static {
+        for (int i=0; i<histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+    
+    private RpcMetrics() {}
+    
+    /**
+     * Record an operation that began at start (on the System.nanoTime() 
+     * scale) and has just ended.
+     */
+    static void record( Op op, long start )
+    {
+        histograms[op.ordinal()].record( System.nanoTime() - start );
+    }
+    
+    /**
+     * @return a summary for each operation, in the order of Op
+     */
+    static ArrayList<LatencySummary> getSummaries()
+    {
+        ArrayList<LatencySummary> list = new ArrayList<LatencySummary>( OPS.length );
+        for (Op op : OPS)
+            list.add( histograms[op.ordinal()].summarize( op.name() ) );
+        return list;
+    }
+    
+    static void reset()
+    {
+        for (LatencyHistogram h : histograms)
+            h.reset();
+    }
+}
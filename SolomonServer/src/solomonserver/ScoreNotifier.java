@@ -0,0 +1,83 @@
+package solomonserver;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pushes round results to the players asynchronously, off the Match's
+ * critical path.  Both players of a round are pushed to in parallel, so a
+ * round costs the slower of the two clients, not the sum; acknowledgements
+ * are fed back into the Match FSM as they arrive.
+ *
+ * Pushes to any one player are delivered in order: each Connection has a
+ * Lane, which runs at most one push at a time on the shared pool.
+ */
+class ScoreNotifier {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    private static ScoreNotifier _instance = null;
+
+    static synchronized ScoreNotifier getInstance() {
+        if (_instance==null)
+            _instance = new ScoreNotifier();
+        return _instance;
+    }
+
+    private final ExecutorService pool = ServerThreads.newPool( "solomon-score-push-" );
+
+    private ScoreNotifier() {}
+
+    /**
+     * Push a completed round's score to a player.  Returns immediately.
+     *
+     * @param match the match the round belongs to
+     * @param player the player to inform
+     * @param score the player's scorecard for the round
+     */
+    void push( final Match match, final Connection player, final Scorecard score ) {
+        player.scoreLane.submit( pool, new Runnable() {
+            @Override
+            public void run() {
+                if (player.notifyScore(score))
+                    match.acknowledge( player, score.roundsPlayed );
+            }
+        });
+    }
+
+    /**
+     * A serial queue of pushes for one player, run on the shared pool
+     */
+    static class Lane implements Runnable {
+        private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private ExecutorService executor;
+
+        void submit( ExecutorService executor, Runnable task ) {
+            queue.add(task);
+            if (scheduled.compareAndSet(false,true)) {
+                this.executor = executor;
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = queue.poll())!=null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    l.log(Level.WARNING,"error pushing score",e);
+                }
+            }
+            scheduled.set(false);
+            // a task may have arrived after the last poll, but before we
+            // cleared the flag: if so, it's ours to run
+            if (!queue.isEmpty() && scheduled.compareAndSet(false,true))
+                executor.execute(this);
+        }
+    }
+}
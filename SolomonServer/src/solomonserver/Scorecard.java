@@ -1,15 +1,24 @@
 package solomonserver;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * This data record contains a snapshot of the current status of a match.  
  * Typically, an RPS program will either ask for this record via a call to 
  * getScore(), or receive one asynchronously via its notifyScore() callback.
  *
+ * It is sent in every round, so it is Externalizable: it is written as 
+ * ordinal bytes and varints (see WireFormat), about ten bytes, rather 
+ * than with its field descriptors and enum names.
+ *
  * @author R Brett Wormley
  */
-public class Scorecard implements Serializable {
+public class Scorecard implements Externalizable {
+    private static final long serialVersionUID = 2L;
+
     public Scorecard() {
         // sensible initial values
         rc              = ResultCode.RC_OK;
@@ -78,5 +87,28 @@ public class Scorecard implements Serializable {
             ties,
             rc );
     }
-    
+
+    @Override
+    public void writeExternal( ObjectOutput out ) throws IOException {
+        WireFormat.writeOrdinal( out, rc );
+        WireFormat.writeOrdinal( out, myGesture );
+        WireFormat.writeOrdinal( out, opponentGesture );
+        WireFormat.writeVarInt( out, myScore );
+        WireFormat.writeVarInt( out, opponentScore );
+        WireFormat.writeVarInt( out, ties );
+        WireFormat.writeVarInt( out, roundsPlayed );
+        WireFormat.writeVarInt( out, maxRounds );
+    }
+
+    @Override
+    public void readExternal( ObjectInput in ) throws IOException {
+        rc              = WireFormat.readOrdinal( in, WireFormat.CODES );
+        myGesture       = WireFormat.readOrdinal( in, WireFormat.GESTURES );
+        opponentGesture = WireFormat.readOrdinal( in, WireFormat.GESTURES );
+        myScore         = WireFormat.readVarInt( in );
+        opponentScore   = WireFormat.readVarInt( in );
+        ties            = WireFormat.readVarInt( in );
+        roundsPlayed    = WireFormat.readVarInt( in );
+        maxRounds       = WireFormat.readVarInt( in );
+    }
 }
@@ -0,0 +1,130 @@
+package solomonserver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The results of a run of consecutive rounds, returned by
+ * submitGestures().  The rounds are kept compactly, as two arrays of
+ * gesture ordinals; getScorecards() expands them into one Scorecard per
+ * round.
+ */
+public class ScorecardBlock implements Serializable {
+
+    /**
+     * RC_OK if every gesture submitted so far has been played;
+     * E_IN_GAME_MODE if some are still waiting on the opponent;
+     * E_MATCH_ENDED if the match was aborted
+     */
+    public ResultCode rc;
+
+    /**
+     * the number of rounds played before the first round in this block
+     */
+    public int firstRound;
+
+    /**
+     * my gesture for each round in the block (as Gesture ordinals)
+     */
+    public byte[] myGestures;
+
+    /**
+     * the opponent's gesture for each round in the block (as Gesture
+     * ordinals)
+     */
+    public byte[] opponentGestures;
+
+    /**
+     * the number of rounds played so far in this match
+     */
+    public int roundsPlayed;
+
+    /**
+     * the number of rounds I have won so far in this match
+     */
+    public int myScore;
+
+    /**
+     * the number of rounds the remote player has won so far in this match
+     */
+    public int opponentScore;
+
+    /**
+     * the number of tied rounds so far in this match
+     */
+    public int ties;
+
+    /**
+     * the number of rounds in this match
+     */
+    public int maxRounds;
+
+    /**
+     * the number of my submitted gestures not yet played
+     */
+    public int pending;
+
+    /**
+     * @return the number of rounds in this block
+     */
+    public int size() {
+        return myGestures==null ? 0 : myGestures.length;
+    }
+
+    /**
+     * Expand the block into a Scorecard per round, with the running score
+     * as of each round.  (The running score is exact when the block runs up
+     * to the latest round, as it does unless rounds were played one at a
+     * time since.)
+     *
+     * @return one scorecard per round, in order
+     */
+    public ArrayList<Scorecard> getScorecards() {
+        Gesture[] gestures = Gesture.values();
+        int n = size();
+
+        // work back from the score at the end of the block to the score
+        // at its start
+        int mine = myScore;
+        int theirs = opponentScore;
+        for (int i=0; i<n; i++) {
+            switch (Match.winnerOf( myGestures[i], opponentGestures[i] )) {
+                case Match.P1_WINS: mine--;   break;
+                case Match.P2_WINS: theirs--; break;
+            }
+        }
+
+        ArrayList<Scorecard> scores = new ArrayList<Scorecard>(n);
+        for (int i=0; i<n; i++) {
+            switch (Match.winnerOf( myGestures[i], opponentGestures[i] )) {
+                case Match.P1_WINS: mine++;   break;
+                case Match.P2_WINS: theirs++; break;
+            }
+            Scorecard score       = new Scorecard();
+            score.rc              = ResultCode.RC_OK;
+            score.myGesture       = gestures[myGestures[i]];
+            score.opponentGesture = gestures[opponentGestures[i]];
+            score.roundsPlayed    = firstRound + i + 1;
+            score.myScore         = mine;
+            score.opponentScore   = theirs;
+            score.ties            = score.roundsPlayed - mine - theirs;
+            score.maxRounds       = maxRounds;
+            scores.add(score);
+        }
+        return scores;
+    }
+
+    @Override
+    public String toString() {
+        return String.format( "rounds %d-%d of %d/%d    WIN/LOSS/TIE %d/%d/%d  pending %d  rc=%s\n",
+            firstRound + 1,
+            firstRound + size(),
+            roundsPlayed,
+            maxRounds,
+            myScore,
+            opponentScore,
+            ties,
+            pending,
+            rc );
+    }
+}
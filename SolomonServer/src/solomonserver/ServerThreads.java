@@ -0,0 +1,110 @@
+package solomonserver;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Makes the threads on which the server blocks: score pushes, player list
+ * delivery, NIO requests and callbacks.  Each of these spends nearly all
+ * its life parked on a client's socket or on the other player.
+ *
+ * With -Dsolomon.threads=virtual, and a JVM that has them (21 or later),
+ * they are virtual threads, so that thousands of parked pushes, callbacks
+ * and challenges cost kilobytes of heap rather than an OS thread and its
+ * stack apiece.  Otherwise they are daemon platform threads.  The JVM is
+ * reached by reflection, so the server still builds and runs on older ones.
+ */
+final class ServerThreads {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * system property selecting the thread mode: "virtual" or "platform"
+     */
+    static final String MODE_PROPERTY = "solomon.threads";
+
+    private static final Method ofVirtual;
+    private static final Method builderName;
+    private static final Method builderUnstarted;
+    private static final Method newThreadPerTaskExecutor;
+
+    static {
+        Method[] m = null;
+        if ("virtual".equalsIgnoreCase( System.getProperty(MODE_PROPERTY) )) {
+            try {
+                Class<?> builder = Class.forName( "java.lang.Thread$Builder" );
+                m = new Method[] {
+                    Thread.class.getMethod( "ofVirtual" ),
+                    builder.getMethod( "name", String.class ),
+                    builder.getMethod( "unstarted", Runnable.class ),
+                    Executors.class.getMethod( "newThreadPerTaskExecutor", ThreadFactory.class ),
+                };
+            } catch (Exception e) {
+                l.log(Level.WARNING,"virtual threads not available in this JVM; using platform threads");
+                m = null;
+            }
+        }
+        ofVirtual                = m==null ? null : m[0];
+        builderName              = m==null ? null : m[1];
+        builderUnstarted         = m==null ? null : m[2];
+        newThreadPerTaskExecutor = m==null ? null : m[3];
+    }
+
+    private ServerThreads() {}
+
+    /**
+     * @return true if blocking work runs on virtual threads
+     */
+    static boolean isVirtual() {
+        return ofVirtual!=null;
+    }
+
+    /**
+     * Make an unstarted thread: virtual, or a daemon platform thread.
+     *
+     * @param task what the thread runs
+     * @param name the thread's name
+     */
+    static Thread newThread( Runnable task, String name ) {
+        if (isVirtual()) {
+            try {
+                Object builder = builderName.invoke( ofVirtual.invoke(null), name );
+                return (Thread)builderUnstarted.invoke( builder, task );
+            } catch (Exception e) {
+                l.log(Level.WARNING,"cannot make a virtual thread",e);
+            }
+        }
+        Thread t = new Thread( task, name );
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * Make a pool for blocking tasks.  With virtual threads, every task
+     * gets a thread of its own (virtual threads are never pooled);
+     * otherwise, idle platform threads are reused.
+     *
+     * @param prefix the threads' names, to which a number is appended
+     */
+    static ExecutorService newPool( final String prefix ) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory factory = new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                return ServerThreads.newThread( r, prefix + threadNumber.incrementAndGet() );
+            }
+        };
+        if (isVirtual()) {
+            try {
+                return (ExecutorService)newThreadPerTaskExecutor.invoke( null, factory );
+            } catch (Exception e) {
+                l.log(Level.WARNING,"cannot make a virtual thread executor",e);
+            }
+        }
+        return Executors.newCachedThreadPool( factory );
+    }
+}
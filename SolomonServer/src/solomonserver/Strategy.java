@@ -0,0 +1,56 @@
+package solomonserver;
+
+/**
+ * A player hosted inside the Solomon Server, rather than connecting over
+ * RMI.  The server gets its gestures by calling it directly, from within
+ * the Match, so a match between two strategies runs at memory speed.
+ * Remote players see a strategy in the player list as any other player,
+ * and may challenge it.
+ *
+ * A strategy is packaged in a jar whose
+ * META-INF/services/solomonserver.Strategy names the implementing class,
+ * and the jar is placed in the server's plugins directory.  The server
+ * constructs one instance (with its no-arg constructor) at startup, which
+ * plays one match at a time.  The methods mirror the client library's
+ * INotification.
+ */
+public interface Strategy {
+
+    /**
+     * @return the team name to register under; it should be unique among
+     * the plugins
+     */
+    String getTeamName();
+
+    /**
+     * Called when a player challenges this strategy to a match.
+     *
+     * @param teamName name of the challenging team
+     * @param numberOfRounds number of rounds for the requested match
+     * @return RC_OK to accept, RC_REQUEST_DENIED to decline; anything else
+     * means never to ask again
+     */
+    ResultCode requestMatch( String teamName, int numberOfRounds );
+
+    /**
+     * Called for each round, once the opponent has committed to its
+     * gesture (but without revealing it).
+     *
+     * @return this round's gesture
+     */
+    Gesture nextGesture();
+
+    /**
+     * Called with the results of each round, as soon as it is played.
+     *
+     * @param score the complete match status, including this round
+     */
+    void notifyScore( Scorecard score );
+
+    /**
+     * Called if the match ends abnormally.  This is advisory.
+     *
+     * @param rc the reason given
+     */
+    void abortMatch( ResultCode rc );
+}
@@ -0,0 +1,81 @@
+package solomonserver;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static solomonserver.ResultCode.*;
+
+/**
+ * The Connection of an in-process Strategy.  It sits in the ConnectionTable
+ * like any other player, but it is not exported (nobody calls it over RMI),
+ * has no keepalives to watch, and its IResponse is a direct call into the
+ * Strategy, which always acknowledges pushed scores.
+ */
+class StrategyConnection extends Connection {
+    private static final Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * the origin reported for every in-process player
+     */
+    static final String ORIGIN = "server";
+
+    private final Strategy strategy;
+
+    StrategyConnection( Strategy strategy ) throws RemoteException {
+        super( strategy.getTeamName(), new StrategyResponse(strategy), ORIGIN );
+        this.strategy = strategy;
+        UnicastRemoteObject.unexportObject( this, true );
+    }
+
+    @Override
+    Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Ask the strategy for its next gesture.  A strategy that fails forfeits
+     * the round with NONE, rather than stalling the match.
+     */
+    Gesture nextGesture() {
+        try {
+            Gesture g = strategy.nextGesture();
+            return g==null ? Gesture.NONE : g;
+        } catch (RuntimeException e) {
+            l.log(Level.WARNING,"strategy "+getTeamName()+" failed to gesture",e);
+            return Gesture.NONE;
+        }
+    }
+
+    /**
+     * The in-process stand-in for a remote client's IResponse
+     */
+    private static class StrategyResponse implements IResponse {
+        private final Strategy strategy;
+
+        StrategyResponse( Strategy strategy ) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public ResultCode requestToInitiateMatch( PlayerEntry challenger, int maxNumberOfRounds ) {
+            return strategy.requestMatch( challenger.teamName, maxNumberOfRounds );
+        }
+
+        @Override
+        public void abortMatch( ResultCode rc ) {
+            strategy.abortMatch( rc );
+        }
+
+        @Override
+        public void abortConnection( ResultCode rc ) {
+        }
+
+        @Override
+        public ResultCode notifyScore( Scorecard score ) {
+            strategy.notifyScore( score );
+            return RC_OK;
+        }
+    }
+}
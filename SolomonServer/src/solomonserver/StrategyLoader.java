@@ -0,0 +1,81 @@
+package solomonserver;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the Strategy plugins at startup, from the jars in the plugins
+ * directory, and registers each as a player in the ConnectionTable.
+ */
+class StrategyLoader {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * where to look for plugin jars.  May be changed with the
+     * solomon.plugins system property.
+     */
+    static final String PLUGINS_DIR = "plugins";
+
+    /**
+     * Load and register every Strategy found in the plugins directory.
+     * A plugin that fails to load is logged and skipped.
+     *
+     * @return the number of strategies registered
+     */
+    static int loadPlugins() {
+        File dir = new File( System.getProperty("solomon.plugins", PLUGINS_DIR) );
+        File[] jars = dir.listFiles( new FileFilter() {
+            @Override
+            public boolean accept( File f ) {
+                return f.isFile() && f.getName().endsWith(".jar");
+            }
+        });
+        if (jars==null || jars.length==0) {
+            l.log(Level.INFO,"no strategy plugins in {0}",dir.getAbsolutePath());
+            return 0;
+        }
+
+        URL[] urls = new URL[jars.length];
+        try {
+            for (int i=0; i<jars.length; i++)
+                urls[i] = jars[i].toURI().toURL();
+        } catch (Exception e) {
+            l.log(Level.WARNING,"error locating strategy plugins",e);
+            return 0;
+        }
+        ClassLoader loader = new URLClassLoader( urls, Strategy.class.getClassLoader() );
+
+        int count = 0;
+        Iterator<Strategy> it = ServiceLoader.load( Strategy.class, loader ).iterator();
+        while (true) {
+            Strategy strategy;
+            try {
+                if (!it.hasNext())
+                    break;
+                strategy = it.next();
+            } catch (ServiceConfigurationError e) {
+                l.log(Level.WARNING,"error loading strategy plugin",e);
+                continue;
+            }
+            try {
+                IConnection conn = ConnectionTable.getInstance().addPlayer( new StrategyConnection(strategy) );
+                if (conn==null)
+                    l.log(Level.WARNING,"no room for strategy {0}",strategy.getTeamName());
+                else {
+                    l.log(Level.INFO,"registered strategy {0}",conn);
+                    count++;
+                }
+            } catch (Exception e) {
+                l.log(Level.WARNING,"error registering strategy plugin",e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,118 @@
+package solomonserver;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A Swiss tournament: a fixed number of rounds (by default, enough to find
+ * a clear winner: log2 of the number of players, rounded up), in each of
+ * which every player meets one whose record is like its own, and never
+ * the same opponent twice if it can be helped.  A field of n players plays
+ * about n/2 matches a round, instead of the n-1 rounds of a round robin.
+ *
+ * A round is paired only when the previous one is over, from the standings
+ * as they then are: in ranking order, each player meets the next unpaired
+ * one it has not met before.  That is a sort and, nearly always, a single
+ * pass, so thousands of players are paired in milliseconds.  With an odd
+ * number of players, the lowest ranked one that has not had a bye gets one.
+ * All of a round's matches are started at once.
+ */
+class SwissTournament extends Tournament {
+
+    private final int numberOfRounds;
+    private int round = 0;
+
+    /**
+     * this round's pairings not yet started; guarded by the tournament
+     */
+    private final LinkedList<Pairing> pending = new LinkedList<Pairing>();
+
+    /**
+     * every pairing so far, by pairKey(); guarded by the tournament
+     */
+    private final Set<Long> met = new HashSet<Long>();
+    private final Set<Connection> hadBye = new HashSet<Connection>();
+
+    /**
+     * @param numberOfRounds rounds to play, or 0 for log2 of the number of
+     * players, rounded up
+     */
+    SwissTournament( List<Connection> entrants, int numberOfRounds, int roundsPerMatch, int parallelism ) {
+        super( "Swiss", entrants, roundsPerMatch, parallelism );
+        if (numberOfRounds<=0) {
+            numberOfRounds = 1;
+            while ((1<<numberOfRounds)<entrants.size())
+                numberOfRounds++;
+        }
+        this.numberOfRounds = Math.min( numberOfRounds, Math.max( 1, entrants.size()-1 ) );
+    }
+
+    @Override
+    protected Pairing nextPairing( Set<Connection> busy ) {
+        if (pending.isEmpty() && busy.isEmpty() && round<numberOfRounds)
+            pairRound();
+        return pending.poll();
+    }
+
+    @Override
+    protected int getScheduledMatches() {
+        return numberOfRounds * (entrants.size()/2);
+    }
+
+    /**
+     * Pair the next round from the current standings.
+     */
+    private void pairRound() {
+        round++;
+        Connection[] ranked = getRanking().toArray( new Connection[0] );
+        int n = ranked.length;
+        boolean[] paired = new boolean[n];
+        long[] ids = new long[n];
+        for (int i=0; i<n; i++)
+            ids[i] = ranked[i].getID() & 0xFFFFFFFFL;
+
+        if (n%2==1) {
+            int bye = n-1;
+            while (bye>0 && hadBye.contains( ranked[bye] ))
+                bye--;
+            paired[bye] = true;
+            hadBye.add( ranked[bye] );
+            awardBye( ranked[bye] );
+        }
+
+        int first = 0;
+        for (int i=0; i<n; i++) {
+            if (paired[i])
+                continue;
+            paired[i] = true;
+            while (first<n && paired[first])
+                first++;
+            // the next unpaired player not met before; failing that, the
+            // next unpaired player
+            int opponent = -1;
+            for (int j=first; j<n; j++) {
+                if (!paired[j] && !met.contains( pairKey( ids[i], ids[j] ) )) {
+                    opponent = j;
+                    break;
+                }
+            }
+            if (opponent<0)
+                opponent = first;
+            if (opponent>=n)
+                break;
+            paired[opponent] = true;
+            met.add( pairKey( ids[i], ids[opponent] ) );
+            pending.add( new Pairing( ranked[i], ranked[opponent] ) );
+        }
+    }
+
+    /**
+     * @return a key for a pair of players, from their (unsigned) IDs, the 
+     * same whichever comes first
+     */
+    private static long pairKey( long x, long y ) {
+        return x<y ? (x<<32)|y : (y<<32)|x;
+    }
+}
@@ -0,0 +1,79 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * How one team has played, in every round since the server started.
+ * Gesture counts are indexed by Gesture ordinal.
+ */
+public class TeamAnalytics implements Serializable {
+
+    public String teamName;
+
+    public long roundsWon;
+    public long roundsLost;
+    public long roundsTied;
+
+    /**
+     * gestures thrown
+     */
+    public long[] gestures;
+
+    /**
+     * gestures thrown, by context: the first round of a match, or after
+     * winning, losing or tying the round before (the FIRST_ROUND,
+     * AFTER_WIN, AFTER_LOSS and AFTER_TIE indexes)
+     */
+    public long[][] gesturesInContext;
+
+    public static final int FIRST_ROUND = GestureAnalytics.FIRST_ROUND;
+    public static final int AFTER_WIN   = GestureAnalytics.AFTER_WIN;
+    public static final int AFTER_LOSS  = GestureAnalytics.AFTER_LOSS;
+    public static final int AFTER_TIE   = GestureAnalytics.AFTER_TIE;
+
+    /**
+     * streaks of rounds won (or lost) in a row, indexed by length; the
+     * last counts every streak that long or longer
+     */
+    public long[] winStreaks;
+    public long[] lossStreaks;
+
+    public int longestWinStreak;
+    public int longestLossStreak;
+
+    public long getRoundsPlayed()
+    {
+        return roundsWon + roundsLost + roundsTied;
+    }
+
+    /**
+     * @return how often the team throws a gesture in a context, from 0 to 1
+     */
+    public double getFrequency( int context, Gesture g )
+    {
+        long total = 0;
+        for (long n : gesturesInContext[context])
+            total += n;
+        return total==0 ? 0.0 : (double)gesturesInContext[context][g.ordinal()] / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append( String.format( "%s: %d rounds, W/L/T %d/%d/%d, longest streaks won %d lost %d%n",
+                teamName, getRoundsPlayed(), roundsWon, roundsLost, roundsTied,
+                longestWinStreak, longestLossStreak ) );
+        // NONE (no gesture, or a null one) only if the team has thrown it
+        boolean none = gestures[Gesture.NONE.ordinal()]>0;
+        String[] contexts = { "first round", "after a win", "after a loss", "after a tie" };
+        for (int c=0; c<contexts.length; c++) {
+            s.append( String.format( "  %-13s", contexts[c] ) );
+            for (Gesture g : Gesture.values())
+                if (g!=Gesture.NONE || none)
+                    s.append( String.format( " %s %4.1f%%", g, 100*getFrequency( c, g ) ) );
+            s.append( String.format( "%n" ) );
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,177 @@
+package solomonserver;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel: a set of deadlines which can be added and
+ * cancelled in constant time, and which, as time advances, hands back the
+ * expired entries at a cost proportional to the number expiring (plus a
+ * small, amortized cost for cascading entries down from the coarser wheels).
+ *
+ * Each level is a ring of WHEEL_SIZE slots; a slot on level n spans
+ * WHEEL_SIZE^n ticks.  An entry is filed on the finest level whose span
+ * still reaches its deadline, and is re-filed one level down each time the
+ * finer wheel wraps around to its slot, until it lands on level 0 and
+ * expires.  Times are monotonic (System.nanoTime()).
+ *
+ * All methods are synchronized: the critical sections are a few pointer
+ * updates, shared between registering threads and the single thread that
+ * advances the wheel.
+ *
+ * @param <T> the type of item with a deadline
+ */
+class TimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS     = 4;
+
+    /**
+     * the furthest ahead a deadline may be; later ones are clamped
+     */
+    private static final long MAX_TICKS = (1L << (WHEEL_BITS*LEVELS)) - 1;
+
+    /**
+     * A scheduled deadline; also the handle for cancelling it
+     */
+    static final class Timeout<T> {
+        final T item;
+        long deadlineTick;
+        Timeout<T> prev;
+        Timeout<T> next;
+
+        private Timeout( T item ) {
+            this.item = item;
+        }
+
+        boolean isScheduled() {
+            return next!=null;
+        }
+    }
+
+    private final long tickNanos;
+    private final long originNanos;
+    private long currentTick = 0;
+    private int size = 0;
+    private final Timeout<T>[][] slots;
+
+    @SuppressWarnings({"unchecked","rawtypes"})
+    TimingWheel( long tickMillis, long nowNanos ) {
+        this.tickNanos   = tickMillis * 1000000L;
+        this.originNanos = nowNanos;
+        slots = new Timeout[LEVELS][WHEEL_SIZE];
+        for (int level=0; level<LEVELS; level++) {
+            for (int ix=0; ix<WHEEL_SIZE; ix++) {
+                // each slot is a circular list headed by a sentinel
+                Timeout<T> sentinel = new Timeout<T>(null);
+                sentinel.prev = sentinel.next = sentinel;
+                slots[level][ix] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedule an item to expire at (or, at most one tick after) a deadline.
+     *
+     * @param item the item to hand back when the deadline passes
+     * @param deadlineNanos the deadline, on the System.nanoTime() scale
+     * @return the handle for cancelling the deadline
+     */
+    synchronized Timeout<T> schedule( T item, long deadlineNanos ) {
+        Timeout<T> timeout = new Timeout<T>(item);
+        timeout.deadlineTick = toTick(deadlineNanos);
+        file(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Move an existing timeout to a new deadline, reusing its handle.
+     */
+    synchronized void reschedule( Timeout<T> timeout, long deadlineNanos ) {
+        if (timeout.isScheduled())
+            unlink(timeout);
+        else
+            size++;
+        timeout.deadlineTick = toTick(deadlineNanos);
+        file(timeout);
+    }
+
+    /**
+     * Cancel a deadline.  Harmless if it already expired or was cancelled.
+     */
+    synchronized void cancel( Timeout<T> timeout ) {
+        if (timeout!=null && timeout.isScheduled()) {
+            unlink(timeout);
+            size--;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Advance the wheel to the present, collecting every expired timeout.
+     *
+     * @param nowNanos the present, on the System.nanoTime() scale
+     * @param expired receives the timeouts that expired; they are no longer
+     * scheduled, but may be rescheduled
+     */
+    synchronized void advance( long nowNanos, List<Timeout<T>> expired ) {
+        long targetTick = (nowNanos - originNanos) / tickNanos;
+        while (currentTick<targetTick) {
+            long tick = ++currentTick;
+
+            // when a finer wheel wraps, pull the next slot of the coarser
+            // wheel down to the finer levels
+            for (int level=1; level<LEVELS; level++) {
+                if ((tick & ((1L<<(WHEEL_BITS*level))-1))!=0)
+                    break;
+                Timeout<T> sentinel = slots[level][(int)((tick>>>(WHEEL_BITS*level)) & WHEEL_MASK)];
+                while (sentinel.next!=sentinel) {
+                    Timeout<T> t = sentinel.next;
+                    unlink(t);
+                    file(t);
+                }
+            }
+
+            Timeout<T> sentinel = slots[0][(int)(tick & WHEEL_MASK)];
+            while (sentinel.next!=sentinel) {
+                Timeout<T> t = sentinel.next;
+                unlink(t);
+                size--;
+                expired.add(t);
+            }
+        }
+    }
+
+    private long toTick( long nanos ) {
+        // round up, so we never expire early
+        long tick = (nanos - originNanos + tickNanos - 1) / tickNanos;
+        if (tick<=currentTick)
+            tick = currentTick + 1;
+        if (tick-currentTick>MAX_TICKS)
+            tick = currentTick + MAX_TICKS;
+        return tick;
+    }
+
+    private void file( Timeout<T> t ) {
+        long delta = t.deadlineTick - currentTick;
+        int level = 0;
+        while (level<LEVELS-1 && delta>=(1L<<(WHEEL_BITS*(level+1))))
+            level++;
+        Timeout<T> sentinel = slots[level][(int)((t.deadlineTick>>>(WHEEL_BITS*level)) & WHEEL_MASK)];
+        t.prev = sentinel.prev;
+        t.next = sentinel;
+        sentinel.prev.next = t;
+        sentinel.prev = t;
+    }
+
+    private void unlink( Timeout<T> t ) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = t.next = null;
+    }
+}
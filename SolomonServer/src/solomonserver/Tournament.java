@@ -0,0 +1,360 @@
+package solomonserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static solomonserver.ResultCode.*;
+
+/**
+ * A tournament among the players in the connection table, run by the
+ * server.  The format (a subclass) decides who plays whom; this class
+ * plays the matches and keeps the standings.
+ *
+ * Matches are dispatched greedily: whenever a match ends, every scheduled
+ * pairing whose players are both free is started at once, up to a limit on
+ * matches in play.  So matches that share no player run concurrently, and
+ * the tournament takes about as long as its longest chain of matches
+ * rather than the sum of them all.
+ *
+ * The server runs one tournament at a time.
+ */
+abstract class Tournament {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * longest a tournament match may run before it is called off, and
+     * scored as it stands, in milliseconds
+     */
+    static final long MATCH_TIMEOUT = Long.getLong( "solomon.tournament.matchTimeout", 600000L );
+
+    private static Tournament current = null;
+
+    /**
+     * @return the tournament in progress, or the latest one; or null
+     */
+    static synchronized Tournament getCurrent() {
+        return current;
+    }
+
+    /**
+     * Start a tournament, unless one is already in progress.
+     *
+     * @return RC_OK, or E_WRONG_STATE if another tournament is running
+     */
+    static synchronized ResultCode start( Tournament tournament ) {
+        if (current!=null && !current.isFinished())
+            return E_WRONG_STATE;
+        current = tournament;
+        tournament.begin();
+        return RC_OK;
+    }
+
+    /**
+     * Two players scheduled to meet, and the outcome once they have
+     */
+    static class Pairing {
+        final Connection player1;
+        final Connection player2;
+
+        boolean played = false;
+        
+        /**
+         * if the match was not played, the player who would not play
+         */
+        Connection forfeitedBy = null;
+        int score1;
+        int score2;
+        int ties;
+
+        Pairing( Connection player1, Connection player2 ) {
+            this.player1 = player1;
+            this.player2 = player2;
+        }
+
+        /**
+         * @return the winner (by forfeit, if the match was not played), or 
+         * null for a draw
+         */
+        Connection getWinner() {
+            if (!played)
+                return forfeitedBy==player1 ? player2 : player1;
+            if (score1==score2)
+                return null;
+            return score1>score2 ? player1 : player2;
+        }
+
+        @Override
+        public String toString() {
+            return played
+                ? String.format( "%s %d-%d %s", player1.getTeamName(), score1, score2, player2.getTeamName() )
+                : String.format( "%s v %s (forfeited by %s)", player1.getTeamName(), 
+                        player2.getTeamName(), forfeitedBy.getTeamName() );
+        }
+    }
+
+    private final String format;
+    protected final List<Connection> entrants;
+    protected final int roundsPerMatch;
+    private final int parallelism;
+
+    private final LinkedHashMap<Connection,TournamentStanding> standings
+            = new LinkedHashMap<Connection,TournamentStanding>();
+
+    /**
+     * players in a match now; guarded by this
+     */
+    private final Set<Connection> busy = new HashSet<Connection>();
+    private int inPlay = 0;
+    private int completed = 0;
+    private boolean finished = false;
+    private long startTime;
+    private long endTime;
+
+    private final ExecutorService pool = ServerThreads.newPool( "solomon-tournament-" );
+
+    /**
+     * @param format the format's name, for reports
+     * @param entrants the players
+     * @param roundsPerMatch rounds in every match
+     * @param parallelism the most matches in play at once
+     */
+    protected Tournament( String format, List<Connection> entrants, int roundsPerMatch, int parallelism ) {
+        this.format = format;
+        this.entrants = new ArrayList<Connection>( entrants );
+        this.roundsPerMatch = roundsPerMatch;
+        this.parallelism = Math.max( 1, parallelism );
+        for (Connection player : entrants)
+            standings.put( player, new TournamentStanding(player) );
+    }
+
+    /* *** FORMAT *** */
+
+    /**
+     * Choose the next match to start: a scheduled pairing neither of whose
+     * players is busy.  A format that schedules round by round may return
+     * null until a round is over; when nothing is busy and this returns
+     * null, the tournament is over.  Called with the tournament locked.
+     *
+     * @param busy players now in a match
+     * @return the pairing, which is then considered started; or null
+     */
+    protected abstract Pairing nextPairing( Set<Connection> busy );
+
+    /**
+     * @return matches the tournament will have played in all, as far as
+     * is known now
+     */
+    protected abstract int getScheduledMatches();
+
+    /**
+     * Take note of a match's outcome (already counted in the standings).
+     * Called with the tournament locked.
+     */
+    protected void matchFinished( Pairing pairing ) {}
+
+    /**
+     * Give a player a bye: it sits out a round, and is scored as if it had
+     * won.  Called with the tournament locked.
+     */
+    protected void awardBye( Connection player ) {
+        TournamentStanding s = standings.get( player );
+        s.byes++;
+        s.won++;
+        s.points += 3;
+        l.log(Level.INFO,"tournament bye: {0}",player.getTeamName());
+    }
+
+    /* *** PLAY *** */
+
+    private synchronized void begin() {
+        startTime = System.nanoTime();
+        l.log(Level.INFO,"BEGIN {0} tournament: {1} players, {2} matches",
+                new Object[] { format, entrants.size(), getScheduledMatches() });
+        dispatch();
+    }
+
+    /**
+     * Start every match that can be started.  Called with the tournament
+     * locked.
+     */
+    private void dispatch() {
+        Pairing pairing;
+        while (inPlay<parallelism && (pairing = nextPairing(busy))!=null) {
+            busy.add( pairing.player1 );
+            busy.add( pairing.player2 );
+            inPlay++;
+            final Pairing p = pairing;
+            pool.execute( new Runnable() {
+                @Override
+                public void run() {
+                    play(p);
+                }
+            });
+        }
+        if (inPlay==0 && !finished) {
+            finished = true;
+            endTime = System.nanoTime();
+            pool.shutdown();
+            l.log(Level.INFO,"END {0} tournament:\n{1}",new Object[] { format, getReport() });
+        }
+    }
+
+    /**
+     * Play one match to the end, on a pool thread, and score it.
+     */
+    private void play( Pairing p ) {
+        try {
+            ConnectionTable table = ConnectionTable.getInstance();
+            Match match = new Match( p.player1, p.player2, roundsPerMatch );
+            if (table.getPlayer(p.player1.getID())!=p.player1)
+                p.forfeitedBy = p.player1;
+            else if (table.getPlayer(p.player2.getID())!=p.player2)
+                p.forfeitedBy = p.player2;
+            else
+                p.forfeitedBy = p.player1.arrangeMatch( match );
+            if (p.forfeitedBy==null) {
+                if (!match.awaitGameOver( MATCH_TIMEOUT )) {
+                    l.log(Level.WARNING,"tournament match timed out: {0}",p);
+                    match.terminate( E_MATCH_ENDED );
+                }
+                Scorecard score = match.makeScorecard( p.player1 );
+                p.score1 = score.myScore;
+                p.score2 = score.opponentScore;
+                p.ties   = score.ties;
+                p.played = true;
+            }
+        } catch (Exception e) {
+            l.log(Level.WARNING,"error in tournament match",e);
+            if (!p.played && p.forfeitedBy==null)
+                p.forfeitedBy = p.player1;
+        }
+        finished(p);
+    }
+
+    private synchronized void finished( Pairing p ) {
+        TournamentStanding s1 = standings.get( p.player1 );
+        TournamentStanding s2 = standings.get( p.player2 );
+        if (p.played) {
+            record( s1, p.score1, p.score2, p.ties );
+            record( s2, p.score2, p.score1, p.ties );
+        }
+        else {
+            l.log(Level.WARNING,"tournament match not played: {0}",p);
+            TournamentStanding loser  = standings.get( p.forfeitedBy );
+            TournamentStanding winner = loser==s1 ? s2 : s1;
+            loser.forfeited++;
+            loser.lost++;
+            winner.won++;
+            winner.points += 3;
+        }
+        l.log(Level.INFO,"tournament match: {0}",p);
+        completed++;
+        inPlay--;
+        busy.remove( p.player1 );
+        busy.remove( p.player2 );
+        matchFinished(p);
+        dispatch();
+    }
+
+    private static void record( TournamentStanding s, int won, int lost, int tied ) {
+        s.matchesPlayed++;
+        s.roundsWon  += won;
+        s.roundsLost += lost;
+        s.roundsTied += tied;
+        if (won>lost) {
+            s.won++;
+            s.points += 3;
+        }
+        else if (won<lost)
+            s.lost++;
+        else {
+            s.drawn++;
+            s.points += 1;
+        }
+    }
+
+    /* *** REPORTING *** */
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the standing of one player; guarded by the tournament
+     */
+    protected TournamentStanding getStanding( Connection player ) {
+        return standings.get( player );
+    }
+
+    /**
+     * @return the entrants, best first (by default, by the standings)
+     */
+    protected synchronized List<Connection> getRanking() {
+        // sort the standings themselves, rather than looking each one up 
+        // for every comparison
+        ArrayList<Map.Entry<Connection,TournamentStanding>> entries 
+                = new ArrayList<Map.Entry<Connection,TournamentStanding>>( standings.entrySet() );
+        Collections.sort( entries, new Comparator<Map.Entry<Connection,TournamentStanding>>() {
+            @Override
+            public int compare( Map.Entry<Connection,TournamentStanding> a, Map.Entry<Connection,TournamentStanding> b ) {
+                return STANDINGS_ORDER.compare( a.getValue(), b.getValue() );
+            }
+        });
+        List<Connection> ranking = new ArrayList<Connection>( entries.size() );
+        for (Map.Entry<Connection,TournamentStanding> e : entries)
+            ranking.add( e.getKey() );
+        return ranking;
+    }
+
+    private static final Comparator<TournamentStanding> STANDINGS_ORDER = new Comparator<TournamentStanding>() {
+        @Override
+        public int compare( TournamentStanding a, TournamentStanding b ) {
+            if (a.points!=b.points)
+                return b.points - a.points;
+            if (a.getRoundDifference()!=b.getRoundDifference())
+                return b.getRoundDifference() - a.getRoundDifference();
+            if (a.roundsWon!=b.roundsWon)
+                return b.roundsWon - a.roundsWon;
+            return a.teamName.compareTo( b.teamName );
+        }
+    };
+
+    synchronized TournamentReport getReport() {
+        TournamentReport report = new TournamentReport();
+        report.format           = format;
+        report.finished         = finished;
+        report.entrants         = entrants.size();
+        report.roundsPerMatch   = roundsPerMatch;
+        report.matchesCompleted = completed;
+        report.matchesInPlay    = inPlay;
+        report.matchesScheduled = getScheduledMatches();
+        report.elapsedMillis    = ((finished ? endTime : System.nanoTime()) - startTime) / 1000000L;
+        report.standings = new ArrayList<TournamentStanding>();
+        for (Connection player : getRanking()) {
+            // copies, so the report is a snapshot
+            TournamentStanding s = standings.get(player);
+            TournamentStanding copy = new TournamentStanding( player );
+            copy.matchesPlayed = s.matchesPlayed;
+            copy.won           = s.won;
+            copy.lost          = s.lost;
+            copy.drawn         = s.drawn;
+            copy.forfeited     = s.forfeited;
+            copy.byes          = s.byes;
+            copy.roundsWon     = s.roundsWon;
+            copy.roundsLost    = s.roundsLost;
+            copy.roundsTied    = s.roundsTied;
+            copy.points        = s.points;
+            report.standings.add( copy );
+        }
+        return report;
+    }
+}
@@ -0,0 +1,55 @@
+package solomonserver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The progress and standings of the server's current (or latest) 
+ * tournament.
+ */
+public class TournamentReport implements Serializable {
+    
+    /**
+     * the tournament's format, eg "round robin"
+     */
+    public String format;
+    
+    public boolean finished;
+    
+    public int entrants;
+    
+    public int roundsPerMatch;
+    
+    /**
+     * matches completed (played, or forfeited) so far
+     */
+    public int matchesCompleted;
+    
+    public int matchesInPlay;
+    
+    /**
+     * matches the tournament will have played in all, as far as is known 
+     * now (a format may only schedule a round when the previous one ends)
+     */
+    public int matchesScheduled;
+    
+    public long elapsedMillis;
+    
+    /**
+     * every entrant, best first
+     */
+    public ArrayList<TournamentStanding> standings;
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( String.format( "%s, %d entrants, %d rounds per match: %s, %d/%d matches, %d in play, %.1f s\n",
+                format, entrants, roundsPerMatch, finished ? "finished" : "in progress",
+                matchesCompleted, matchesScheduled, matchesInPlay, elapsedMillis/1000.0 ) );
+        int place = 1;
+        for (TournamentStanding s : standings)
+            sb.append( String.format( "%3d. %s\n", place++, s ) );
+        return sb.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package solomonserver;
+
+import java.io.Serializable;
+
+/**
+ * One player's record in a tournament.  Matches score three points for a 
+ * win and one for a draw; ties are broken by rounds won less rounds lost.
+ */
+public class TournamentStanding implements Serializable {
+    
+    public String teamName;
+    public String origin;
+    public int id;
+    
+    public int matchesPlayed;
+    public int won;
+    public int lost;
+    public int drawn;
+    
+    /**
+     * matches this player did not play, because it declined, was busy, or 
+     * was gone; each counts as a loss, and as a win for its opponent
+     */
+    public int forfeited;
+    
+    /**
+     * rounds of the tournament this player sat out, with nobody left to 
+     * meet; each counts as a win
+     */
+    public int byes;
+    
+    public int roundsWon;
+    public int roundsLost;
+    public int roundsTied;
+    
+    public int points;
+    
+    TournamentStanding( Connection player )
+    {
+        this.teamName = player.getTeamName();
+        this.origin   = player.getOrigin();
+        this.id       = player.getID();
+    }
+    
+    int getRoundDifference()
+    {
+        return roundsWon - roundsLost;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format( "%-12s %3d pts  W/L/D %d/%d/%d  forfeits %d  byes %d  rounds %d/%d/%d",
+                teamName, points, won, lost, drawn, forfeited, byes,
+                roundsWon, roundsLost, roundsTied );
+    }
+}
@@ -0,0 +1,427 @@
+package solomonserver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact binary encodings of the protocol's values, for the NIO transport.
+ * Integers are zig-zag varints (one byte for small values of either sign),
+ * enums are one byte (their ordinal; 0xFF for null), and strings are a
+ * varint length and UTF-8.  A Scorecard takes about ten bytes.
+ *
+ * An Encoder builds one frame: a four-byte length, then the opcode, the
+ * call ID and the payload (see WireProtocol).  A Decoder reads the values
+ * back from a frame's payload.
+ */
+public final class WireFormat {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int NULL_ORDINAL = 0xFF;
+
+    static final ResultCode[]      CODES   = ResultCode.values();
+    static final Gesture[]         GESTURES = Gesture.values();
+    static final ConnectionState[] STATES  = ConnectionState.values();
+    static final ListAction.Action[] ACTIONS = ListAction.Action.values();
+
+    private WireFormat() {}
+
+    /**
+     * Writes one frame into a growable buffer
+     */
+    public static final class Encoder {
+        private byte[] buf;
+        private int pos;
+
+        /**
+         * Start a frame.
+         *
+         * @param opcode one of the WireProtocol opcodes
+         * @param callId the call ID (0 for a one-way message)
+         */
+        public Encoder( int opcode, int callId ) {
+            buf = new byte[64];
+            pos = 4;
+            writeByte( opcode );
+            writeInt32( callId );
+        }
+
+        /**
+         * Finish the frame: fill in its length.
+         *
+         * @return the frame, ready to write
+         */
+        public ByteBuffer toFrame() {
+            int length = pos - 4;
+            buf[0] = (byte)(length>>>24);
+            buf[1] = (byte)(length>>>16);
+            buf[2] = (byte)(length>>>8);
+            buf[3] = (byte)length;
+            return ByteBuffer.wrap( buf, 0, pos );
+        }
+
+        private void ensure( int n ) {
+            if (pos+n>buf.length)
+                buf = Arrays.copyOf( buf, Math.max( buf.length*2, pos+n ) );
+        }
+
+        public Encoder writeByte( int b ) {
+            ensure(1);
+            buf[pos++] = (byte)b;
+            return this;
+        }
+
+        public Encoder writeBytes( byte[] b ) {
+            writeInt( b.length );
+            ensure( b.length );
+            System.arraycopy( b, 0, buf, pos, b.length );
+            pos += b.length;
+            return this;
+        }
+
+        private void writeInt32( int v ) {
+            ensure(4);
+            buf[pos++] = (byte)(v>>>24);
+            buf[pos++] = (byte)(v>>>16);
+            buf[pos++] = (byte)(v>>>8);
+            buf[pos++] = (byte)v;
+        }
+
+        public Encoder writeLong( long v ) {
+            long zz = (v<<1) ^ (v>>63);
+            ensure(10);
+            while ((zz & ~0x7FL)!=0) {
+                buf[pos++] = (byte)((zz & 0x7F) | 0x80);
+                zz >>>= 7;
+            }
+            buf[pos++] = (byte)zz;
+            return this;
+        }
+
+        public Encoder writeInt( int v ) {
+            return writeLong( v );
+        }
+
+        public Encoder writeBoolean( boolean b ) {
+            return writeByte( b ? 1 : 0 );
+        }
+
+        public Encoder writeEnum( Enum<?> e ) {
+            return writeByte( e==null ? NULL_ORDINAL : e.ordinal() );
+        }
+
+        public Encoder writeString( String s ) {
+            if (s==null)
+                return writeInt(-1);
+            byte[] b = s.getBytes(UTF8);
+            return writeBytes(b);
+        }
+
+        public Encoder writeScorecard( Scorecard s ) {
+            writeBoolean( s!=null );
+            if (s!=null) {
+                writeEnum( s.rc );
+                writeEnum( s.myGesture );
+                writeEnum( s.opponentGesture );
+                writeInt( s.myScore );
+                writeInt( s.opponentScore );
+                writeInt( s.ties );
+                writeInt( s.roundsPlayed );
+                writeInt( s.maxRounds );
+            }
+            return this;
+        }
+
+        public Encoder writeScorecardBlock( ScorecardBlock b ) {
+            writeBoolean( b!=null );
+            if (b!=null) {
+                writeEnum( b.rc );
+                writeInt( b.firstRound );
+                writeInt( b.roundsPlayed );
+                writeInt( b.myScore );
+                writeInt( b.opponentScore );
+                writeInt( b.ties );
+                writeInt( b.maxRounds );
+                writeInt( b.pending );
+                writeBytes( b.myGestures==null ? new byte[0] : b.myGestures );
+                writeBytes( b.opponentGestures==null ? new byte[0] : b.opponentGestures );
+            }
+            return this;
+        }
+
+        public Encoder writePlayerEntry( PlayerEntry e ) {
+            writeBoolean( e!=null );
+            if (e!=null) {
+                writeString( e.teamName );
+                writeString( e.origin );
+                writeInt( e.id );
+                writeEnum( e.state );
+            }
+            return this;
+        }
+
+        public Encoder writePlayerList( ArrayList<PlayerEntry> list ) {
+            writeInt( list==null ? -1 : list.size() );
+            if (list!=null)
+                for (PlayerEntry e : list)
+                    writePlayerEntry(e);
+            return this;
+        }
+
+        public Encoder writeListAction( ListAction a ) {
+            writeBoolean( a!=null );
+            if (a!=null) {
+                writeEnum( a.event );
+                writePlayerEntry( a.player );
+                writeLong( a.version );
+            }
+            return this;
+        }
+
+        public Encoder writePlayerListDelta( PlayerListDelta d ) {
+            writeBoolean( d!=null );
+            if (d!=null) {
+                writeLong( d.version );
+                writeBoolean( d.snapshot );
+                if (d.snapshot)
+                    writePlayerList( d.players );
+                else {
+                    writeInt( d.changes.size() );
+                    for (ListAction a : d.changes)
+                        writeListAction(a);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Reads values from a frame's payload
+     */
+    public static final class Decoder {
+        private final ByteBuffer buf;
+
+        /**
+         * @param payload the frame, positioned after the call ID
+         */
+        public Decoder( ByteBuffer payload ) {
+            this.buf = payload;
+        }
+
+        public int readByte() {
+            return buf.get() & 0xFF;
+        }
+
+        public byte[] readBytes() {
+            int n = readInt();
+            if (n<0 || n>buf.remaining())
+                throw new IllegalArgumentException( "bad length " + n );
+            byte[] b = new byte[n];
+            buf.get(b);
+            return b;
+        }
+
+        public long readLong() {
+            long zz = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift>63)
+                    throw new IllegalArgumentException( "malformed varint" );
+                b = buf.get();
+                zz |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80)!=0);
+            return (zz>>>1) ^ -(zz & 1);
+        }
+
+        public int readInt() {
+            return (int)readLong();
+        }
+
+        public boolean readBoolean() {
+            return readByte()!=0;
+        }
+
+        private static <E> E lookup( E[] values, int ordinal ) {
+            if (ordinal==NULL_ORDINAL)
+                return null;
+            if (ordinal>=values.length)
+                throw new IllegalArgumentException( "bad ordinal " + ordinal );
+            return values[ordinal];
+        }
+
+        public ResultCode readResultCode() {
+            return lookup( CODES, readByte() );
+        }
+
+        public Gesture readGesture() {
+            return lookup( GESTURES, readByte() );
+        }
+
+        public ConnectionState readConnectionState() {
+            return lookup( STATES, readByte() );
+        }
+
+        public String readString() {
+            int n = readInt();
+            if (n<0)
+                return null;
+            if (n>buf.remaining())
+                throw new IllegalArgumentException( "bad length " + n );
+            byte[] b = new byte[n];
+            buf.get(b);
+            return new String( b, UTF8 );
+        }
+
+        public Scorecard readScorecard() {
+            if (!readBoolean())
+                return null;
+            Scorecard s = new Scorecard();
+            s.rc              = readResultCode();
+            s.myGesture       = readGesture();
+            s.opponentGesture = readGesture();
+            s.myScore         = readInt();
+            s.opponentScore   = readInt();
+            s.ties            = readInt();
+            s.roundsPlayed    = readInt();
+            s.maxRounds       = readInt();
+            return s;
+        }
+
+        public ScorecardBlock readScorecardBlock() {
+            if (!readBoolean())
+                return null;
+            ScorecardBlock b = new ScorecardBlock();
+            b.rc               = readResultCode();
+            b.firstRound       = readInt();
+            b.roundsPlayed     = readInt();
+            b.myScore          = readInt();
+            b.opponentScore    = readInt();
+            b.ties             = readInt();
+            b.maxRounds        = readInt();
+            b.pending          = readInt();
+            b.myGestures       = readBytes();
+            b.opponentGestures = readBytes();
+            return b;
+        }
+
+        public PlayerEntry readPlayerEntry() {
+            if (!readBoolean())
+                return null;
+            String teamName = readString();
+            String origin   = readString();
+            int id          = readInt();
+            return new PlayerEntry( teamName, origin, id, readConnectionState() );
+        }
+
+        public ArrayList<PlayerEntry> readPlayerList() {
+            int n = readInt();
+            if (n<0)
+                return null;
+            ArrayList<PlayerEntry> list = new ArrayList<PlayerEntry>( Math.min( n, buf.remaining() ) );
+            for (int i=0; i<n; i++)
+                list.add( readPlayerEntry() );
+            return list;
+        }
+
+        public ListAction readListAction() {
+            if (!readBoolean())
+                return null;
+            ListAction.Action event = lookup( ACTIONS, readByte() );
+            ListAction a = new ListAction( event, readPlayerEntry() );
+            a.version = readLong();
+            return a;
+        }
+
+        public PlayerListDelta readPlayerListDelta() {
+            if (!readBoolean())
+                return null;
+            long version = readLong();
+            if (readBoolean())
+                return PlayerListDelta.snapshot( version, readPlayerList() );
+            int n = readInt();
+            ArrayList<ListAction> changes = new ArrayList<ListAction>( Math.min( n, buf.remaining() ) );
+            for (int i=0; i<n; i++)
+                changes.add( readListAction() );
+            return PlayerListDelta.changes( version, changes );
+        }
+    }
+
+    /* *** STREAMS *** */
+
+    // The same encodings, over a DataOutput or DataInput, for the value
+    // classes' writeExternal() and readExternal(): so a value costs the
+    // same few bytes through RMI's object streams as it does in a frame.
+
+    static void writeVarLong( DataOutput out, long v ) throws IOException {
+        long zz = (v<<1) ^ (v>>63);
+        while ((zz & ~0x7FL)!=0) {
+            out.writeByte( (int)((zz & 0x7F) | 0x80) );
+            zz >>>= 7;
+        }
+        out.writeByte( (int)zz );
+    }
+
+    static void writeVarInt( DataOutput out, int v ) throws IOException {
+        writeVarLong( out, v );
+    }
+
+    static void writeOrdinal( DataOutput out, Enum<?> e ) throws IOException {
+        out.writeByte( e==null ? NULL_ORDINAL : e.ordinal() );
+    }
+
+    static void writeText( DataOutput out, String s ) throws IOException {
+        if (s==null) {
+            writeVarInt( out, -1 );
+            return;
+        }
+        byte[] b = s.getBytes(UTF8);
+        writeVarInt( out, b.length );
+        out.write( b );
+    }
+
+    static long readVarLong( DataInput in ) throws IOException {
+        long zz = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift>63)
+                throw new StreamCorruptedException( "malformed varint" );
+            b = in.readByte();
+            zz |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80)!=0);
+        return (zz>>>1) ^ -(zz & 1);
+    }
+
+    static int readVarInt( DataInput in ) throws IOException {
+        return (int)readVarLong( in );
+    }
+
+    static <E> E readOrdinal( DataInput in, E[] values ) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal==NULL_ORDINAL)
+            return null;
+        if (ordinal>=values.length)
+            throw new StreamCorruptedException( "bad ordinal " + ordinal );
+        return values[ordinal];
+    }
+
+    static String readText( DataInput in ) throws IOException {
+        int n = readVarInt( in );
+        if (n<0)
+            return null;
+        if (n>WireProtocol.MAX_FRAME)
+            throw new StreamCorruptedException( "bad length " + n );
+        byte[] b = new byte[n];
+        in.readFully( b );
+        return new String( b, UTF8 );
+    }
+}
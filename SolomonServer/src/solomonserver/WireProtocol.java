@@ -0,0 +1,93 @@
+package solomonserver;
+
+/**
+ * The NIO transport's protocol: the operations of IRegistrar, IConnection,
+ * IResponse and IPlayerListListener, carried as length-prefixed binary
+ * frames over one TCP connection per client.
+ *
+ * Every frame is
+ *
+ *   int32  length of the rest of the frame
+ *   byte   opcode
+ *   int32  call ID
+ *   ...    payload (in WireFormat encodings)
+ *
+ * Either side may make calls.  A call with a non-zero ID is answered by a
+ * REPLY (or ERROR) frame carrying the same ID; a call with ID 0 is one-way.
+ * Client calls are answered in whatever order they complete, so a client
+ * may have several outstanding at once.
+ *
+ * Payloads, by opcode (request, then reply):
+ *
+ *   REGISTER              teamName                 id (0 if refused)
+ *   REQUEST_REMOTE_MATCH  playerID, rounds         rc
+ *   TERMINATE_CONNECTION  rc                       -
+ *   DO_GESTURE            gesture                  rc
+ *   ABORTING_MATCH        rc                       -
+ *   GET_SCORECARD         -                        scorecard
+ *   AWAIT_SCORECARD       round, timeout           scorecard
+ *   PLAY_ROUND            gesture, timeout         scorecard
+ *   SUBMIT_GESTURES       gestures, timeout        scorecard block
+ *   GET_PLAYER_LIST       -                        player list
+ *   GET_PLAYER_LIST_SINCE version                  player list delta
+ *   ADD_LISTENER          -                        -
+ *   REMOVE_LISTENER       -                        -
+ *   GET_ID                -                        id
+ *   KEEPALIVE             -                        (one-way)
+ *
+ *   CB_REQUEST_MATCH      challenger, rounds       rc
+ *   CB_NOTIFY_SCORE       scorecard                rc
+ *   CB_ABORT_MATCH        rc                       (one-way)
+ *   CB_ABORT_CONNECTION   rc                       (one-way)
+ *   CB_LIST_ACTION        list action              (one-way)
+ *
+ *   ERROR                 message
+ */
+public final class WireProtocol {
+
+    private WireProtocol() {}
+
+    /**
+     * the server's NIO port.  May be changed with the solomon.nioPort
+     * system property (or the transport disabled, with -1).
+     */
+    public static final int PORT = 1100;
+
+    /**
+     * the largest frame either side will accept
+     */
+    public static final int MAX_FRAME = 1<<20;
+
+    /**
+     * bytes before the payload: length, opcode and call ID
+     */
+    public static final int HEADER = 9;
+
+    /* client to server */
+    public static final int REGISTER              = 0x01;
+    public static final int REQUEST_REMOTE_MATCH  = 0x02;
+    public static final int TERMINATE_CONNECTION  = 0x03;
+    public static final int DO_GESTURE            = 0x04;
+    public static final int ABORTING_MATCH        = 0x05;
+    public static final int GET_SCORECARD         = 0x06;
+    public static final int AWAIT_SCORECARD       = 0x07;
+    public static final int PLAY_ROUND            = 0x08;
+    public static final int SUBMIT_GESTURES       = 0x09;
+    public static final int GET_PLAYER_LIST       = 0x0A;
+    public static final int GET_PLAYER_LIST_SINCE = 0x0B;
+    public static final int ADD_LISTENER          = 0x0C;
+    public static final int REMOVE_LISTENER       = 0x0D;
+    public static final int GET_ID                = 0x0E;
+    public static final int KEEPALIVE             = 0x0F;
+
+    /* server to client */
+    public static final int CB_REQUEST_MATCH      = 0x20;
+    public static final int CB_NOTIFY_SCORE       = 0x21;
+    public static final int CB_ABORT_MATCH        = 0x22;
+    public static final int CB_ABORT_CONNECTION   = 0x23;
+    public static final int CB_LIST_ACTION        = 0x24;
+
+    /* either way */
+    public static final int REPLY                 = 0x40;
+    public static final int ERROR                 = 0x41;
+}
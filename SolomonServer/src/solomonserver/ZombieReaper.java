@@ -0,0 +1,221 @@
+package solomonserver;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static solomonserver.ResultCode.*;
+
+/**
+ * Finds connections whose clients have stopped sending keepalives, and
+ * reclaims them, in two stages:
+ *
+ *   1) when a connection misses its keepalive deadline, it is marked
+ *      ZOMBIE, and given a grace period to be heard from again;
+ *   2) if it is still silent when the grace period ends, it is reaped:
+ *      its match is aborted (informing the surviving opponent) and dropped
+ *      from the match table, its remote object is unexported, and it is
+ *      removed from the connection table.
+ *
+ * A zombie that is heard from during its grace period is revived.
+ *
+ * Deadlines are kept in a TimingWheel advanced by a single daemon thread,
+ * so each tick only examines connections whose deadlines have passed.
+ */
+class ZombieReaper {
+    final private static Logger l = Logger.getLogger("com.cs151.solomon.server");
+
+    /**
+     * resolution of keepalive deadlines, in milliseconds: the interval at
+     * which the zombie killer advances the timing wheel
+     */
+    private static final int ZOMBIE_HEARTBEAT = 1000;
+
+    /**
+     * time after which we consider a connection dead, in milliseconds.
+     * May be changed with the solomon.zombieDelay system property.
+     */
+    private static final int ZOMBIE_DELAY = 30000;
+
+    /**
+     * time a zombie is given to come back before it is reaped, in
+     * milliseconds.  May be changed with the solomon.zombieGrace system
+     * property.
+     */
+    private static final int ZOMBIE_GRACE = 30000;
+
+    private final long zombieDelayNanos
+            = TimeUnit.MILLISECONDS.toNanos( Integer.getInteger("solomon.zombieDelay", ZOMBIE_DELAY) );
+    private final long zombieGraceNanos
+            = TimeUnit.MILLISECONDS.toNanos( Integer.getInteger("solomon.zombieGrace", ZOMBIE_GRACE) );
+
+    private final ConnectionTable table;
+
+    /**
+     * every connection's keepalive (or grace period) deadline
+     */
+    private final TimingWheel<Connection> deadlines;
+
+    /**
+     * scheduler for repeating invocation of the thread that searches for
+     * zombie connections (a plain daemon thread: the server must run
+     * headless, without the AWT event queue)
+     */
+    private final ScheduledExecutorService zombieKiller;
+
+    /* counts of what the reaper has done, since the server started */
+    private final AtomicLong zombiesMarked      = new AtomicLong();
+    private final AtomicLong zombiesRevived     = new AtomicLong();
+    private final AtomicLong connectionsReaped  = new AtomicLong();
+    private final AtomicLong matchesAborted     = new AtomicLong();
+    private final AtomicLong objectsUnexported  = new AtomicLong();
+
+    ZombieReaper( ConnectionTable table ) {
+        this.table = table;
+        deadlines = new TimingWheel<Connection>( ZOMBIE_HEARTBEAT, System.nanoTime() );
+        zombieKiller = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "solomon-zombie-killer" );
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        zombieKiller.scheduleAtFixedRate( new Runnable() {
+            @Override
+            public void run() {
+                expireKeepalives();
+            }
+        }, ZOMBIE_HEARTBEAT, ZOMBIE_HEARTBEAT, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Start watching a newly added connection's keepalives.
+     */
+    void track( Connection player ) {
+        // in-process strategies send no keepalives, and never die
+        if (player.getStrategy()!=null)
+            return;
+        player.keepaliveTimeout = deadlines.schedule(
+                player, player.getLastKeepalive() + zombieDelayNanos );
+    }
+
+    /**
+     * Stop watching a connection that has left the table.
+     */
+    void untrack( Connection player ) {
+        deadlines.cancel( player.keepaliveTimeout );
+    }
+
+    /**
+     * method executed on the thread that periodically searches for
+     * zombie connections.  Only connections whose deadlines have passed
+     * are examined.  keepAlive() just records a timestamp, so a deadline
+     * that passes on a connection which has since been heard from is
+     * simply pushed out to its new deadline.
+     */
+    private void expireKeepalives() {
+        try {
+            long now = System.nanoTime();
+            ArrayList<TimingWheel.Timeout<Connection>> expired = new ArrayList<TimingWheel.Timeout<Connection>>();
+            deadlines.advance( now, expired );
+            if (expired.isEmpty())
+                return;
+
+            long reapedBefore = connectionsReaped.get();
+            for (TimingWheel.Timeout<Connection> timeout : expired) {
+                Connection player = timeout.item;
+                if (table.getPlayer(player.getID())!=player)
+                    continue;
+                long lastHeard = player.getLastKeepalive();
+                boolean isZombie = player.getState()==ConnectionState.ZOMBIE;
+
+                // heard from in time: push out the deadline (and revive)
+                if (lastHeard+zombieDelayNanos-now>0) {
+                    if (isZombie) {
+                        player.changeState( player.getMatch()!=null && !player.getMatch().isGameOver()
+                                ? ConnectionState.MATCH_IN_PLAY
+                                : ConnectionState.AVAILABLE_FOR_PLAY );
+                        zombiesRevived.incrementAndGet();
+                        l.log(Level.INFO,"revived zombie {0}",player);
+                    }
+                    deadlines.reschedule( timeout, lastHeard + zombieDelayNanos );
+                }
+
+                // stage one: mark it, and give it a grace period
+                else if (!isZombie) {
+                    player.changeState( ConnectionState.ZOMBIE );
+                    zombiesMarked.incrementAndGet();
+                    l.log(Level.INFO,"presumed dead: {0}",player);
+                    deadlines.reschedule( timeout, now + zombieGraceNanos );
+                }
+
+                // stage two: reclaim it
+                else {
+                    reap( player, E_NO_CONNECTION );
+                }
+            }
+            if (connectionsReaped.get()!=reapedBefore)
+                l.log(Level.INFO,"reaper: {0}",getReport());
+        }
+        catch (Exception e) {
+            // never let an exception cancel the periodic task
+            l.log(Level.WARNING,"error expiring keepalives",e);
+        }
+    }
+
+    /**
+     * Reclaim everything held by a connection: abort its match (informing
+     * the opponent), retire the match in the match table, unexport the
+     * remote object, and remove it from the connection table.
+     *
+     * @param player the connection to reclaim
+     * @param rc reason given to the opponent, if a match is aborted
+     */
+    void reap( Connection player, ResultCode rc ) {
+        l.log(Level.INFO,"reaping {0}",player);
+
+        Match match = player.getMatch();
+        if (match!=null) {
+            if (!match.isGameOver()) {
+                match.abortMatch( player, rc );
+                matchesAborted.incrementAndGet();
+            }
+            MatchTable.getInstance().retireMatch( match );
+        }
+        MatchTable.getInstance().removePlayer( player );
+
+        try {
+            if (UnicastRemoteObject.unexportObject( player, true ))
+                objectsUnexported.incrementAndGet();
+        } catch (Exception e) {
+            // never exported, or already unexported
+        }
+
+        table.removePlayer( player );
+        connectionsReaped.incrementAndGet();
+    }
+
+    /**
+     * @return counts of what the reaper has done since the server started
+     */
+    ReaperReport getReport() {
+        ReaperReport report = new ReaperReport();
+        report.zombiesMarked     = zombiesMarked.get();
+        report.zombiesRevived    = zombiesRevived.get();
+        report.connectionsReaped = connectionsReaped.get();
+        report.matchesAborted    = matchesAborted.get();
+        report.objectsUnexported = objectsUnexported.get();
+        report.zombiesPending    = 0;
+        for (PlayerEntry e : table.getPlayerList(null))
+            if (e.state==ConnectionState.ZOMBIE)
+                report.zombiesPending++;
+        return report;
+    }
+}
@@ -5,11 +5,13 @@
 package dumpplayerlist;
 
 import java.rmi.Naming;
-import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import solomonserver.IAdministrator;
 import solomonserver.IRegistrar;
+import solomonserver.ListAction;
 import solomonserver.PlayerEntry;
+import solomonserver.PlayerListDelta;
 
 /**
  *
@@ -26,15 +28,31 @@ public class DumpPlayerList {
     }
     
     public void dump(String[] args) {
-            ArrayList<PlayerEntry> list;
+            LinkedHashMap<Integer,PlayerEntry> table = new LinkedHashMap<Integer,PlayerEntry>();
+            long version = 0;
+            PlayerListDelta delta;
             Iterator<PlayerEntry> i;
  
          try {
             IRegistrar registrar = (IRegistrar) Naming.lookup("Registrar");  
             IAdministrator admin = registrar.getAdminInterface("");
             do {
-                list = admin.getPlayerList();
-                i = list.iterator();
+                // only fetch what changed since the last pass
+                delta = admin.getPlayerListSince(version);
+                if (delta.snapshot) {
+                    table.clear();
+                    for (PlayerEntry p : delta.players)
+                        table.put(p.id, p);
+                }
+                for (ListAction change : delta.changes) {
+                    if (change.event==ListAction.Action.REMOVE)
+                        table.remove(change.player.id);
+                    else
+                        table.put(change.player.id, change.player);
+                }
+                version = delta.version;
+                
+                i = table.values().iterator();
                 while (i.hasNext()) {
                     PlayerEntry p = i.next();
                     System.out.printf( "   %8s  %08x %14s %s\n", p.teamName, p.id, p.origin, p.state );
@@ -56,8 +56,7 @@ public class GenericClient implements INotification {
         
             // play rounds until finished
             do {
-                rc = remote.doGesture( newGesture() );
-                score = remote.getScore();
+                score = remote.playRound( newGesture() );
                 if (score!=null) {
                     System.out.println( score );
                     bDone = score.roundsPlayed>=score.maxRounds;
@@ -0,0 +1,186 @@
+package loadgenerator;
+
+import java.rmi.Naming;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import solomonserver.IRegistrar;
+import solomonserver.LatencySummary;
+import solomonserver.Registrar;
+import solomonserver.WireProtocol;
+
+/**
+ * Puts a Solomon Server under load: thousands of simulated clients in one
+ * JVM, without any window, each registering, matching up with another,
+ * and playing rounds, at a set rate or as fast as the server allows.
+ * Every few seconds it prints the rounds played per second and the
+ * latency of a round; at the end, the latency of every kind of call, and
+ * a count of every result code other than RC_OK.
+ *
+ * Options are given as name=value, in any order:
+ *
+ *     host=localhost   the server
+ *     transport=nio    nio or rmi
+ *     clients=100      simulated clients (made even: they play in pairs)
+ *     rounds=1000      rounds per match
+ *     rate=0           rounds per second for each client; 0 for flat out
+ *     duration=60      length of the run, in seconds
+ *     ramp=10          seconds over which the clients register
+ *     report=5         seconds between reports
+ *
+ * The server turns away clients past solomon.maxConnections (16 by
+ * default), so raise it to suit, eg -Dsolomon.maxConnections=5000.  Each
+ * client is a thread (and, over NIO, has a reader and a callback thread
+ * besides), so thousands of them want a small stack: run with -Xss256k.
+ */
+public class LoadGenerator {
+
+    /**
+     * keepalive period, as the client library's
+     */
+    private static final long HEARTBEAT_MILLIS = 2500;
+
+    private static final long STACK_SIZE = 256*1024;
+
+    /**
+     * The run's settings, shared by every client
+     */
+    static class Config {
+        String host      = "localhost";
+        String transport = "nio";
+        int    clients   = 100;
+        int    rounds    = 1000;
+        double rate      = 0;
+        int    duration  = 60;
+        int    ramp      = 10;
+        int    report    = 5;
+
+        int nioPort = Integer.getInteger( "solomon.nioPort", WireProtocol.PORT );
+
+        /**
+         * the server's registrar, over RMI; null for NIO
+         */
+        IRegistrar registrar = null;
+
+        private volatile boolean stopped = false;
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        void parse( String[] args ) {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq<0)
+                    throw new IllegalArgumentException( "expected name=value: " + arg );
+                String name  = arg.substring( 0, eq );
+                String value = arg.substring( eq+1 );
+                if      (name.equals("host"))      host      = value;
+                else if (name.equals("transport")) transport = value;
+                else if (name.equals("clients"))   clients   = Integer.parseInt(value);
+                else if (name.equals("rounds"))    rounds    = Integer.parseInt(value);
+                else if (name.equals("rate"))      rate      = Double.parseDouble(value);
+                else if (name.equals("duration"))  duration  = Integer.parseInt(value);
+                else if (name.equals("ramp"))      ramp      = Integer.parseInt(value);
+                else if (name.equals("report"))    report    = Integer.parseInt(value);
+                else
+                    throw new IllegalArgumentException( "unknown option: " + name );
+            }
+            if (!transport.equals("nio") && !transport.equals("rmi"))
+                throw new IllegalArgumentException( "transport must be nio or rmi" );
+            clients = Math.max( 2, clients + clients%2 );
+        }
+    }
+
+    public static void main( String[] args ) throws Exception {
+        Config config = new Config();
+        try {
+            config.parse( args );
+        } catch (IllegalArgumentException e) {
+            System.err.println( e.getMessage() );
+            System.err.println( "usage: LoadGenerator [host=] [transport=nio|rmi] [clients=] [rounds=] "
+                              + "[rate=] [duration=] [ramp=] [report=]" );
+            System.exit(1);
+        }
+        if (config.transport.equals("rmi"))
+            config.registrar = (IRegistrar)Naming.lookup( "//" + config.host + ":" + Registrar.PORT + "/Registrar" );
+
+        System.out.printf( "%d clients over %s to %s, %d rounds a match, %s, for %d s%n",
+                config.clients, config.transport, config.host, config.rounds,
+                config.rate>0 ? config.rate + " rounds/s each" : "flat out", config.duration );
+
+        LoadStats stats = new LoadStats();
+        final SimulatedClient[] clients = new SimulatedClient[config.clients];
+        Thread[] threads = new Thread[config.clients];
+        String run = Long.toString( System.currentTimeMillis()%1000000, 36 );
+        for (int i=0; i<clients.length; i+=2) {
+            SimulatedClient.Pairing pair = new SimulatedClient.Pairing();
+            for (int j=i; j<=i+1; j++) {
+                long delay = config.ramp*1000L * j / clients.length;
+                clients[j] = new SimulatedClient( config, stats, "load-" + run + "-" + j,
+                                                  pair, j==i, delay, j );
+                threads[j] = new Thread( null, clients[j], "load-" + j, STACK_SIZE );
+                threads[j].setDaemon(true);
+                threads[j].start();
+            }
+        }
+
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+                Thread t = new Thread( r, "load-keepalive" );
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        heartbeat.scheduleAtFixedRate( new Runnable() {
+            @Override
+            public void run() {
+                for (SimulatedClient client : clients)
+                    client.keepAlive();
+            }
+        }, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS );
+
+        // report as the run goes
+        System.out.printf( "%6s %10s %6s %10s %10s %10s %10s %10s%n",
+                "time", "registered", "lost", "rounds/s", "p50 us", "p99 us", "p999 us", "max us" );
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos( config.duration );
+        long lastRounds = 0;
+        long lastTime = start;
+        while (System.nanoTime()<end) {
+            Thread.sleep( Math.min( config.report*1000L, Math.max( 1, (end-System.nanoTime())/1000000 ) ) );
+            long now = System.nanoTime();
+            long rounds = stats.rounds.get();
+            LatencySummary round = stats.summarize( LoadStats.Call.PLAY_ROUND, true );
+            stats.nextInterval();
+            System.out.printf( "%6d %10d %6d %10.0f %10.1f %10.1f %10.1f %10.1f%n",
+                    (now-start)/1000000000L, stats.registered.get(), stats.lost.get(),
+                    (rounds-lastRounds) * 1e9 / (now-lastTime),
+                    round.p50Nanos/1e3, round.p99Nanos/1e3, round.p999Nanos/1e3, round.maxNanos/1e3 );
+            lastRounds = rounds;
+            lastTime = now;
+        }
+
+        // stop, and let the clients finish the calls they are in
+        config.stopped = true;
+        long elapsed = System.nanoTime() - start;
+        heartbeat.shutdown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 12 );
+        for (Thread t : threads)
+            t.join( Math.max( 1, (deadline-System.nanoTime())/1000000 ) );
+        for (SimulatedClient client : clients)
+            client.close();
+
+        System.out.printf( "%nrounds %d, matches %d, %.0f rounds/s over %d s%n",
+                stats.rounds.get(), stats.matches.get(),
+                stats.rounds.get() * 1e9 / elapsed, elapsed/1000000000L );
+        System.out.printf( "registered %d of %d clients, %d lost%n%n",
+                stats.registered.get(), config.clients, stats.lost.get() );
+        for (LoadStats.Call call : LoadStats.Call.values())
+            System.out.println( stats.summarize( call, false ) );
+        System.out.printf( "%nresult codes other than RC_OK:%n%s", stats.errorSummary() );
+        System.exit(0);
+    }
+}
@@ -0,0 +1,85 @@
+package loadgenerator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import solomonserver.LatencyHistogram;
+import solomonserver.LatencySummary;
+import solomonserver.ResultCode;
+
+/**
+ * What every simulated client has done: calls timed by kind, rounds and
+ * matches played, and the result codes that were not RC_OK.  Latencies
+ * are kept twice, for the whole run and for the latest report interval.
+ */
+class LoadStats {
+
+    enum Call { REGISTER, REQUEST_MATCH, PLAY_ROUND, KEEP_ALIVE }
+
+    private static final Call[] CALLS = Call.values();
+    private static final ResultCode[] CODES = ResultCode.values();
+
+    private final LatencyHistogram[] total    = new LatencyHistogram[CALLS.length];
+    private final LatencyHistogram[] interval = new LatencyHistogram[CALLS.length];
+
+    final AtomicLong rounds   = new AtomicLong();
+    final AtomicLong matches  = new AtomicLong();
+
+    /**
+     * calls answered with something other than RC_OK, by ResultCode ordinal
+     */
+    private final AtomicLongArray errors = new AtomicLongArray( CODES.length );
+
+    /**
+     * calls that failed outright (the server unreachable, or the
+     * connection lost)
+     */
+    final AtomicLong exceptions = new AtomicLong();
+
+    final AtomicInteger registered = new AtomicInteger();
+    final AtomicInteger lost       = new AtomicInteger();
+
+    LoadStats() {
+        for (int i=0; i<CALLS.length; i++) {
+            total[i]    = new LatencyHistogram();
+            interval[i] = new LatencyHistogram();
+        }
+    }
+
+    void record( Call call, long nanos ) {
+        total[call.ordinal()].record( nanos );
+        interval[call.ordinal()].record( nanos );
+    }
+
+    void error( ResultCode rc ) {
+        errors.incrementAndGet( rc.ordinal() );
+    }
+
+    LatencySummary summarize( Call call, boolean sinceLastInterval ) {
+        LatencyHistogram h = sinceLastInterval ? interval[call.ordinal()] : total[call.ordinal()];
+        return h.summarize( call.name() );
+    }
+
+    /**
+     * Start the next report interval.
+     */
+    void nextInterval() {
+        for (LatencyHistogram h : interval)
+            h.reset();
+    }
+
+    /**
+     * @return every result code seen other than RC_OK, with its count
+     */
+    String errorSummary() {
+        StringBuilder s = new StringBuilder();
+        for (int i=0; i<CODES.length; i++) {
+            long n = errors.get(i);
+            if (n>0)
+                s.append( String.format( "  %-26s %9d%n", CODES[i], n ) );
+        }
+        if (exceptions.get()>0)
+            s.append( String.format( "  %-26s %9d%n", "(exceptions)", exceptions.get() ) );
+        return s.length()==0 ? String.format( "  none%n" ) : s.toString();
+    }
+}
@@ -0,0 +1,304 @@
+package loadgenerator;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import solomonClientLib.NioConnection;
+import solomonserver.*;
+
+/**
+ * One simulated client, on a thread of its own: it registers, then plays
+ * match after match against the client it is paired with, a round per
+ * playRound(), until the run is over.
+ *
+ * Of each pair, the challenger asks for every match; the other accepts,
+ * and waits for the challenger's word that the match has begun before it
+ * plays, and the challenger waits for the other to finish a match before
+ * it asks for the next.  So neither ever calls the server in the wrong
+ * state on account of the other: any E_WRONG_STATE counted is the
+ * server's doing.
+ *
+ * The challenger also decides when the pair stops.  When the run is over,
+ * it ends the match in play between rounds, and its partner plays on until
+ * the server tells it the match has ended.  So neither is left waiting on
+ * a gesture that never comes.  What the partner hears after the stop is
+ * neither timed nor counted.
+ *
+ * A client that fails stops, and its partner with it.
+ */
+class SimulatedClient implements Runnable {
+
+    /**
+     * longest the server is asked to wait for the opponent's gesture, in
+     * milliseconds
+     */
+    private static final long ROUND_TIMEOUT = 10000;
+
+    /**
+     * how long a client waits on its partner before looking to see if the
+     * run is over, in milliseconds
+     */
+    private static final long POLL_MILLIS = 200;
+
+    /**
+     * What two clients paired to play each other share
+     */
+    static class Pairing {
+        final CountDownLatch registered = new CountDownLatch(2);
+
+        /**
+         * released by the challenger when a match has begun, and by the
+         * other when it has played the match out
+         */
+        final Semaphore begun    = new Semaphore(0);
+        final Semaphore finished = new Semaphore(0);
+
+        volatile int opponentID;
+
+        /**
+         * set when either client has failed, so the other stops too
+         */
+        volatile boolean broken = false;
+    }
+
+    private final LoadGenerator.Config config;
+    private final LoadStats stats;
+    private final String teamName;
+    private final Pairing pair;
+    private final boolean challenger;
+    private final long startDelayMillis;
+    private final Random random;
+    private final Response response = new Response();
+
+    private volatile IConnection conn = null;
+
+    SimulatedClient( LoadGenerator.Config config, LoadStats stats, String teamName,
+                     Pairing pair, boolean challenger, long startDelayMillis, long seed )
+    {
+        this.config           = config;
+        this.stats            = stats;
+        this.teamName         = teamName;
+        this.pair             = pair;
+        this.challenger       = challenger;
+        this.startDelayMillis = startDelayMillis;
+        this.random           = new Random( seed );
+    }
+
+    @Override
+    public void run() {
+        try {
+            Thread.sleep( startDelayMillis );
+            boolean ok = register();
+            if (!ok)
+                pair.broken = true;
+            pair.registered.countDown();
+            if (!ok || !await( pair.registered ))
+                return;
+
+            while (!config.isStopped() && !pair.broken) {
+                if (challenger) {
+                    if (!challenge()) {
+                        Thread.sleep( POLL_MILLIS );
+                        continue;
+                    }
+                    pair.begun.release();
+                    play();
+                    if (!acquire( pair.finished ))
+                        break;
+                }
+                else {
+                    if (!acquire( pair.begun ))
+                        break;
+                    play();
+                    pair.finished.release();
+                }
+            }
+        } catch (InterruptedException e) {
+        } catch (Exception e) {
+            // the server is gone, or has dropped this client
+            stats.exceptions.incrementAndGet();
+            stats.lost.incrementAndGet();
+            pair.broken = true;
+        }
+    }
+
+    private boolean register() throws Exception {
+        if (config.registrar!=null)
+            UnicastRemoteObject.exportObject( response, 0 );
+        long start = System.nanoTime();
+        IConnection c = config.registrar!=null
+                ? config.registrar.register( teamName, response )
+                : NioConnection.register( config.host, config.nioPort, teamName, response );
+        stats.record( LoadStats.Call.REGISTER, System.nanoTime()-start );
+        if (c==null) {
+            stats.error( ResultCode.E_REGISTRATION_FAILED );
+            return false;
+        }
+        conn = c;
+        if (!challenger)
+            pair.opponentID = c.getID();
+        stats.registered.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Ask the partner for a match.
+     *
+     * @return true if the match has begun
+     */
+    private boolean challenge() throws RemoteException {
+        long start = System.nanoTime();
+        ResultCode rc = conn.requestRemoteMatch( pair.opponentID, config.rounds );
+        stats.record( LoadStats.Call.REQUEST_MATCH, System.nanoTime()-start );
+        if (rc!=ResultCode.RC_OK) {
+            stats.error( rc );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Play a match out, at the configured rate or as fast as the server
+     * allows.  At a set rate, each round is timed from when it was due,
+     * not from when it was sent, so that a server falling behind shows
+     * in the latencies rather than hiding in a slower rate.
+     */
+    private void play() throws RemoteException {
+        long interval = config.rate>0 ? (long)(1e9/config.rate) : 0;
+        long due = System.nanoTime();
+        int expected = 1;
+        while (expected<=config.rounds) {
+            if (challenger && config.isStopped()) {
+                conn.abortingMatch( ResultCode.E_MATCH_ENDED );
+                return;
+            }
+            long start;
+            if (interval>0) {
+                start = due;
+                long delay = due - System.nanoTime();
+                if (delay>0)
+                    LockSupport.parkNanos( delay );
+                due += interval;
+            }
+            else
+                start = System.nanoTime();
+
+            Scorecard score = conn.playRound( randomGesture(), ROUND_TIMEOUT );
+
+            // the partner, once the run is over, plays on only until the
+            // challenger's end of the match reaches it
+            if (config.isStopped()) {
+                if (score==null || score.rc!=ResultCode.RC_OK)
+                    return;
+                expected = score.roundsPlayed + 1;
+                continue;
+            }
+            stats.record( LoadStats.Call.PLAY_ROUND, System.nanoTime()-start );
+
+            // no match on the server for this client
+            if (score==null) {
+                stats.error( ResultCode.E_WRONG_STATE );
+                return;
+            }
+            // refused, or timed out: give the match up, so that both
+            // players are free for the next
+            if (score.rc!=ResultCode.RC_OK) {
+                stats.error( score.rc );
+                if (score.rc!=ResultCode.E_MATCH_ENDED)
+                    conn.abortingMatch( score.rc );
+                return;
+            }
+            if (score.roundsPlayed!=expected)
+                stats.error( ResultCode.E_LOSS_OF_SYNCHRONIZATION );
+            expected = score.roundsPlayed + 1;
+            // count each round once, for the pair
+            if (challenger)
+                stats.rounds.incrementAndGet();
+        }
+        if (challenger && expected>config.rounds)
+            stats.matches.incrementAndGet();
+    }
+
+    /**
+     * Tell the server this client is still there.  Called from the load
+     * generator's keepalive timer.
+     */
+    void keepAlive() {
+        IConnection c = conn;
+        if (c==null)
+            return;
+        long start = System.nanoTime();
+        try {
+            c.keepAlive();
+            stats.record( LoadStats.Call.KEEP_ALIVE, System.nanoTime()-start );
+        } catch (RemoteException e) {
+            stats.exceptions.incrementAndGet();
+        }
+    }
+
+    private boolean await( CountDownLatch latch ) throws InterruptedException {
+        while (!latch.await( POLL_MILLIS, TimeUnit.MILLISECONDS ))
+            if (config.isStopped())
+                return false;
+        return !pair.broken;
+    }
+
+    private boolean acquire( Semaphore semaphore ) throws InterruptedException {
+        while (!semaphore.tryAcquire( POLL_MILLIS, TimeUnit.MILLISECONDS ))
+            if (config.isStopped() || pair.broken)
+                return false;
+        return true;
+    }
+
+    /**
+     * Close the connection.  Called by the load generator once every
+     * client has stopped, so that no client's leaving ends a match
+     * another is still in.
+     */
+    void close() {
+        IConnection c = conn;
+        conn = null;
+        if (c instanceof NioConnection)
+            ((NioConnection)c).close();
+        if (config.registrar!=null) {
+            try {
+                UnicastRemoteObject.unexportObject( response, true );
+            } catch (NoSuchObjectException e) {}
+        }
+    }
+
+    private Gesture randomGesture() {
+        switch (random.nextInt(3)) {
+            case 0:  return Gesture.ROCK;
+            case 1:  return Gesture.PAPER;
+            default: return Gesture.SCISSORS;
+        }
+    }
+
+    /**
+     * Accepts every challenge; collects scores by polling, not by push
+     */
+    private static class Response implements IResponse {
+
+        @Override
+        public ResultCode requestToInitiateMatch( PlayerEntry challenger, int maxNumberOfRounds ) {
+            return ResultCode.RC_OK;
+        }
+
+        @Override
+        public void abortMatch( ResultCode rc ) {}
+
+        @Override
+        public void abortConnection( ResultCode rc ) {}
+
+        @Override
+        public ResultCode notifyScore( Scorecard score ) {
+            return ResultCode.E_NOT_IMPLEMENTED;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package solomonbench;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import solomonserver.*;
+
+/**
+ * The connection table at several sizes: a player joining and leaving,
+ * finding a player by team name and origin, and fetching the player
+ * list, each on one thread and on four at once.
+ *
+ * Each trial runs in its own JVM, since the table is a singleton; the
+ * connection limit is raised to fit, and the zombie reaper put off, so
+ * that the table holds just the players put there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dsolomon.maxConnections=100000",
+        "-Dsolomon.zombieDelay=2000000000" })
+public class ConnectionTableBench {
+
+    /**
+     * The table, filled with players before the trial
+     */
+    @State(Scope.Benchmark)
+    public static class Table {
+        @Param({ "16", "256", "4096" })
+        int tableSize;
+
+        ConnectionTable table;
+        Connection[] players;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            table = ConnectionTable.getInstance();
+            players = new Connection[tableSize];
+            for (int i=0; i<tableSize; i++) {
+                players[i] = Players.connect( "team-" + i, "10.0." + (i>>8) + "." + (i&0xFF) );
+                table.addPlayer( players[i] );
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (Connection player : players)
+                table.removePlayer( player );
+            Players.release( players );
+        }
+    }
+
+    /**
+     * A player of this thread's own, to join and leave the table, and
+     * where this thread is in the table for lookups
+     */
+    @State(Scope.Thread)
+    public static class Visitor {
+        Connection player;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            player = Players.connect( "visitor-" + Thread.currentThread().getId(), "10.1.0.1" );
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Players.release( player );
+        }
+    }
+
+    @Benchmark
+    public IConnection addRemovePlayer( Table t, Visitor v ) {
+        IConnection c = t.table.addPlayer( v.player );
+        t.table.removePlayer( v.player );
+        return c;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public IConnection addRemovePlayerContended( Table t, Visitor v ) {
+        return addRemovePlayer( t, v );
+    }
+
+    @Benchmark
+    public Connection findPlayer( Table t, Visitor v ) {
+        Connection player = t.players[v.next++ % t.tableSize];
+        return t.table.findPlayer( player.getTeamName(), player.getOrigin() );
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Connection findPlayerContended( Table t, Visitor v ) {
+        return findPlayer( t, v );
+    }
+
+    /**
+     * the list, as most callers get it: unchanged since the last call
+     */
+    @Benchmark
+    public ArrayList<PlayerEntry> getPlayerList( Table t ) {
+        return t.table.getPlayerList( null );
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ArrayList<PlayerEntry> getPlayerListContended( Table t ) {
+        return t.table.getPlayerList( null );
+    }
+
+    /**
+     * the list after every change: a player joins or leaves, and the list
+     * is built again
+     */
+    @Benchmark
+    public ArrayList<PlayerEntry> getPlayerListAfterChange( Table t, Visitor v ) {
+        if (v.next++ % 2==0)
+            t.table.addPlayer( v.player );
+        else
+            t.table.removePlayer( v.player );
+        return t.table.getPlayerList( null );
+    }
+}
@@ -0,0 +1,93 @@
+package solomonbench;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.*;
+import solomonserver.*;
+
+/**
+ * Player list fan-out: a change to the connection table published with
+ * notifyListeners(), timed until every listener has been handed it.  One
+ * publisher at a time, then four at once.
+ *
+ * Listeners here answer at once, so what is measured is the server's
+ * share: queueing the event for each listener, and waking each one's
+ * delivery thread.  Only one event per publisher is in flight, so no
+ * listener ever falls behind far enough to be dropped.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBench {
+
+    /**
+     * A change that counts its deliveries
+     */
+    static class CountedAction extends ListAction {
+        final AtomicInteger delivered = new AtomicInteger();
+
+        CountedAction( PlayerEntry player ) {
+            super( Action.CHANGE, player );
+        }
+    }
+
+    static class Listener implements IPlayerListListener {
+        @Override
+        public ResultCode notifyAction( ListAction e ) {
+            ((CountedAction)e).delivered.incrementAndGet();
+            return ResultCode.RC_OK;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Listeners {
+        @Param({ "1", "16", "256" })
+        int listeners;
+
+        ConnectionTable table;
+        Connection host;
+        Listener[] registered;
+        PlayerEntry entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            table = ConnectionTable.getInstance();
+            host = Players.connect( "bench-host", "localhost" );
+            registered = new Listener[listeners];
+            for (int i=0; i<listeners; i++) {
+                registered[i] = new Listener();
+                host.addPlayerListListener( registered[i] );
+            }
+            entry = new PlayerEntry();
+            entry.teamName = "bench";
+            entry.origin   = "localhost";
+            entry.id       = 1;
+            entry.state    = ConnectionState.AVAILABLE_FOR_PLAY;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws RemoteException {
+            for (Listener listener : registered)
+                host.removePlayerListListener( listener );
+            Players.release( host );
+        }
+    }
+
+    @Benchmark
+    public int notifyListeners( Listeners l ) {
+        CountedAction event = new CountedAction( l.entry );
+        l.table.notifyListeners( event );
+        while (event.delivered.get()<l.listeners)
+            Thread.yield();
+        return event.delivered.get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int notifyListenersContended( Listeners l ) {
+        return notifyListeners( l );
+    }
+}
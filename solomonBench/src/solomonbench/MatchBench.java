@@ -0,0 +1,202 @@
+package solomonbench;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Control;
+import solomonserver.*;
+
+/**
+ * The Match state machine: a round as polling clients play it (both
+ * players gesture, then both fetch the scorecard), on one thread, and on
+ * two at once, one for each player, racing on the match; and
+ * makeScorecard(), alone and with several threads reading one match.
+ *
+ * A match that reaches its last round is replaced by a new one, so a
+ * measurement never runs into GAME_OVER.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBench {
+
+    /**
+     * the most rounds the server allows in a match
+     */
+    static final int MAX_ROUNDS = 0x7FFF;
+
+    private static final Gesture[] GESTURES = { Gesture.ROCK, Gesture.PAPER, Gesture.SCISSORS };
+
+    /**
+     * A match, and the round it is at, for one thread
+     */
+    @State(Scope.Thread)
+    public static class Single {
+        Connection player1;
+        Connection player2;
+        Match match;
+        int round;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            player1 = Players.connect( "bench-1", "localhost" );
+            player2 = Players.connect( "bench-2", "localhost" );
+            newMatch();
+        }
+
+        void newMatch() {
+            match = new Match( player1, player2, MAX_ROUNDS );
+            round = 0;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Players.release( player1, player2 );
+        }
+    }
+
+    @Benchmark
+    public Scorecard roundCycle( Single s ) {
+        if (s.round==MAX_ROUNDS)
+            s.newMatch();
+        Gesture g = GESTURES[s.round++ % GESTURES.length];
+        s.match.doGesture( s.player1, g );
+        s.match.doGesture( s.player2, GESTURES[(s.round*7) % GESTURES.length] );
+        s.match.getScorecard( s.player1 );
+        return s.match.getScorecard( s.player2 );
+    }
+
+    @Benchmark
+    public Scorecard makeScorecard( Single s ) {
+        return s.match.makeScorecard( s.player1 );
+    }
+
+    /**
+     * A match shared by two threads, one for each player.  Player one
+     * starts the next match when one is over.
+     */
+    @State(Scope.Group)
+    public static class Paired {
+        Connection player1;
+        Connection player2;
+        volatile Match match;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            player1 = Players.connect( "bench-1", "localhost" );
+            player2 = Players.connect( "bench-2", "localhost" );
+            match = new Match( player1, player2, MAX_ROUNDS );
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Players.release( player1, player2 );
+        }
+    }
+
+    /**
+     * Where one player is: its match, the last round it has seen, and
+     * whether it has gestured in the next.  Kept across invocations, since
+     * an iteration may end mid-round.
+     */
+    @State(Scope.Thread)
+    public static class Seat {
+        Match match;
+        int round;
+        boolean gestured;
+        int n;
+
+        Gesture next() {
+            return GESTURES[n++ % GESTURES.length];
+        }
+    }
+
+    @Benchmark
+    @Group("contendedRound")
+    @GroupThreads(1)
+    public Scorecard player1( Paired p, Seat seat, Control control ) {
+        return play( p, p.player1, seat, control, true );
+    }
+
+    @Benchmark
+    @Group("contendedRound")
+    @GroupThreads(1)
+    public Scorecard player2( Paired p, Seat seat, Control control ) {
+        return play( p, p.player2, seat, control, false );
+    }
+
+    /**
+     * Play one round: gesture, then poll for the result.  Neither player
+     * ever blocks, so either may stop when the iteration ends; while
+     * waiting on the other, a player yields, so the two make progress even
+     * sharing a processor.
+     */
+    private static Scorecard play( Paired p, Connection me, Seat seat, Control control, boolean isPlayer1 ) {
+        if (seat.match==null)
+            seat.match = p.match;
+        while (!control.stopMeasurement) {
+            Match m = seat.match;
+            if (seat.round==MAX_ROUNDS) {
+                if (isPlayer1)
+                    p.match = new Match( p.player1, p.player2, MAX_ROUNDS );
+                else if (p.match==m) {
+                    Thread.yield();
+                    continue;
+                }
+                seat.match = p.match;
+                seat.round = 0;
+            }
+            else if (!seat.gestured) {
+                seat.gestured = m.doGesture( me, seat.next() )==ResultCode.RC_OK;
+                if (!seat.gestured)
+                    Thread.yield();
+            }
+            else {
+                Scorecard score = m.getScorecard( me );
+                if (score.rc==ResultCode.RC_OK && score.roundsPlayed>seat.round) {
+                    seat.gestured = false;
+                    seat.round = score.roundsPlayed;
+                    return score;
+                }
+                Thread.yield();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One match, read by every thread
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Connection player1;
+        Connection player2;
+        Match match;
+
+        @Setup(Level.Trial)
+        public void setup() throws RemoteException {
+            player1 = Players.connect( "bench-1", "localhost" );
+            player2 = Players.connect( "bench-2", "localhost" );
+            match = new Match( player1, player2, MAX_ROUNDS );
+            for (int i=0; i<100; i++) {
+                match.doGesture( player1, GESTURES[i % GESTURES.length] );
+                match.doGesture( player2, GESTURES[(i/3) % GESTURES.length] );
+                match.getScorecard( player1 );
+                match.getScorecard( player2 );
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            Players.release( player1, player2 );
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Scorecard makeScorecardContended( Shared s ) {
+        return s.match.makeScorecard( s.player1 );
+    }
+}
@@ -0,0 +1,60 @@
+package solomonbench;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import solomonserver.*;
+
+/**
+ * Players for the benchmarks: server-side connections whose clients
+ * accept every match and poll for their scores, so nothing measured
+ * waits on a callback.
+ */
+class Players {
+
+    /**
+     * the server's log, held so its level sticks: only warnings, so that
+     * what is measured is the server's work, not the console's
+     */
+    private static final Logger serverLog = Logger.getLogger("com.cs151.solomon.server");
+    static {
+        serverLog.setLevel( Level.WARNING );
+    }
+
+    private Players() {}
+
+    private static final IResponse PULL_CLIENT = new IResponse() {
+        @Override
+        public ResultCode requestToInitiateMatch( PlayerEntry challenger, int maxNumberOfRounds ) {
+            return ResultCode.RC_OK;
+        }
+        @Override
+        public void abortMatch( ResultCode rc ) {}
+        @Override
+        public void abortConnection( ResultCode rc ) {}
+        @Override
+        public ResultCode notifyScore( Scorecard score ) {
+            return ResultCode.E_NOT_IMPLEMENTED;
+        }
+    };
+
+    /**
+     * @return a connection for a player, not yet in the connection table
+     */
+    static Connection connect( String teamName, String origin ) throws RemoteException {
+        return new Connection( teamName, PULL_CLIENT, origin );
+    }
+
+    /**
+     * Stop exporting players' connections, so the JVM may exit.
+     */
+    static void release( Connection... players ) {
+        for (Connection player : players) {
+            try {
+                UnicastRemoteObject.unexportObject( player, true );
+            } catch (NoSuchObjectException e) {}
+        }
+    }
+}
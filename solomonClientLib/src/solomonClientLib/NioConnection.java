@@ -0,0 +1,347 @@
+package solomonClientLib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import solomonserver.*;
+import static solomonserver.WireProtocol.*;
+
+/**
+ * The client's end of the NIO transport: an IConnection that speaks the
+ * binary protocol (see WireProtocol) over a plain socket, instead of RMI.
+ * The Server class uses it in place of the RMI stub when so configured;
+ * to the rest of the library, the two are interchangeable.
+ *
+ * A reader thread takes in replies, and hands the server's callbacks to
+ * the client's IResponse (and player list listener) on a callback thread,
+ * one at a time, in the order they arrive.
+ */
+public class NioConnection implements IConnection {
+
+    /**
+     * longest to wait for the server to answer a call, beyond any time the
+     * call itself asks the server to wait, in milliseconds
+     */
+    static final long CALL_TIMEOUT = 60000;
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final IResponse response;
+    private volatile IPlayerListListener listener = null;
+    private volatile boolean closed = false;
+    private int id = 0;
+
+    private final AtomicInteger nextCallId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer,PendingCall> calls = new ConcurrentHashMap<Integer,PendingCall>();
+
+    private final ExecutorService callbacks = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "solomon-nio-callback" );
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private NioConnection( String host, int port, IResponse response ) throws IOException {
+        this.response = response;
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect( new InetSocketAddress( host, port ), CONNECT_TIMEOUT );
+        out = new BufferedOutputStream( socket.getOutputStream() );
+        in  = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+
+        Thread reader = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                readFrames();
+            }
+        }, "solomon-nio-reader" );
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connect to the server's NIO port, and register.
+     *
+     * @param host the server's address
+     * @param port the server's NIO port
+     * @param teamName name of this client, unique per IP address
+     * @param response listener for server callbacks
+     * @return the connection, or null if the server refused the registration
+     * @throws IOException if the server could not be reached
+     */
+    public static NioConnection register( String host, int port, String teamName, IResponse response )
+            throws IOException
+    {
+        NioConnection conn = new NioConnection( host, port, response );
+        int callId = conn.newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( REGISTER, callId ).writeString( teamName );
+        conn.id = new WireFormat.Decoder( conn.call( callId, req, 0 ) ).readInt();
+        if (conn.id==0) {
+            conn.close();
+            return null;
+        }
+        return conn;
+    }
+
+    /* *** IConnection *** */
+
+    @Override
+    public ResultCode requestRemoteMatch( int playerID, int maxNumberOfRounds ) throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( REQUEST_REMOTE_MATCH, callId );
+        req.writeInt( playerID ).writeInt( maxNumberOfRounds );
+        return new WireFormat.Decoder( call( callId, req, 0 ) ).readResultCode();
+    }
+
+    @Override
+    public void terminateConnection( ResultCode rc ) throws RemoteException {
+        int callId = newCallId();
+        call( callId, new WireFormat.Encoder( TERMINATE_CONNECTION, callId ).writeEnum(rc), 0 );
+    }
+
+    @Override
+    public ResultCode doGesture( Gesture g ) throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( DO_GESTURE, callId ).writeEnum(g);
+        return new WireFormat.Decoder( call( callId, req, 0 ) ).readResultCode();
+    }
+
+    @Override
+    public void abortingMatch( ResultCode reasonCode ) throws RemoteException {
+        int callId = newCallId();
+        call( callId, new WireFormat.Encoder( ABORTING_MATCH, callId ).writeEnum(reasonCode), 0 );
+    }
+
+    @Override
+    public Scorecard getScorecard() throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( GET_SCORECARD, callId );
+        return new WireFormat.Decoder( call( callId, req, 0 ) ).readScorecard();
+    }
+
+    @Override
+    public Scorecard awaitScorecard( int round, long timeoutMillis ) throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( AWAIT_SCORECARD, callId );
+        req.writeInt( round ).writeLong( timeoutMillis );
+        return new WireFormat.Decoder( call( callId, req, timeoutMillis ) ).readScorecard();
+    }
+
+    @Override
+    public Scorecard playRound( Gesture g, long timeoutMillis ) throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( PLAY_ROUND, callId );
+        req.writeEnum( g ).writeLong( timeoutMillis );
+        return new WireFormat.Decoder( call( callId, req, timeoutMillis ) ).readScorecard();
+    }
+
+    @Override
+    public ScorecardBlock submitGestures( Gesture[] gestures, long timeoutMillis ) throws RemoteException {
+        byte[] ordinals = new byte[ gestures==null ? 0 : gestures.length ];
+        for (int i=0; i<ordinals.length; i++)
+            ordinals[i] = (byte)(gestures[i]==null ? Gesture.NONE : gestures[i]).ordinal();
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( SUBMIT_GESTURES, callId );
+        req.writeBytes( ordinals ).writeLong( timeoutMillis );
+        return new WireFormat.Decoder( call( callId, req, timeoutMillis ) ).readScorecardBlock();
+    }
+
+    @Override
+    public ArrayList<PlayerEntry> getPlayerList() throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( GET_PLAYER_LIST, callId );
+        return new WireFormat.Decoder( call( callId, req, 0 ) ).readPlayerList();
+    }
+
+    @Override
+    public PlayerListDelta getPlayerListSince( long version ) throws RemoteException {
+        int callId = newCallId();
+        WireFormat.Encoder req = new WireFormat.Encoder( GET_PLAYER_LIST_SINCE, callId ).writeLong( version );
+        return new WireFormat.Decoder( call( callId, req, 0 ) ).readPlayerListDelta();
+    }
+
+    /**
+     * The server keeps one listener per NIO connection, which forwards
+     * changes here; the latest listener added receives them.
+     */
+    @Override
+    public void addPlayerListListener( IPlayerListListener listener ) throws RemoteException {
+        this.listener = listener;
+        int callId = newCallId();
+        call( callId, new WireFormat.Encoder( ADD_LISTENER, callId ), 0 );
+    }
+
+    @Override
+    public void removePlayerListListener( IPlayerListListener listener ) throws RemoteException {
+        if (this.listener!=listener)
+            return;
+        this.listener = null;
+        int callId = newCallId();
+        call( callId, new WireFormat.Encoder( REMOVE_LISTENER, callId ), 0 );
+    }
+
+    @Override
+    public int getID() {
+        return id;
+    }
+
+    @Override
+    public void keepAlive() throws RemoteException {
+        send( new WireFormat.Encoder( KEEPALIVE, 0 ).toFrame() );
+    }
+
+    /**
+     * Close the socket.  Outstanding calls fail with a RemoteException.
+     */
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {}
+        for (PendingCall call : calls.values())
+            call.fail( "connection closed" );
+        calls.clear();
+        callbacks.shutdown();
+    }
+
+    /* *** CALLS *** */
+
+    private int newCallId() {
+        int callId;
+        do {
+            callId = nextCallId.incrementAndGet();
+        } while (callId==0);
+        return callId;
+    }
+
+    /**
+     * Send a call, and wait for its reply.
+     *
+     * @param serverWait how long the call asks the server to wait, which is
+     * added to the usual timeout
+     * @return the reply's payload
+     */
+    private ByteBuffer call( int callId, WireFormat.Encoder req, long serverWait ) throws RemoteException {
+        PendingCall pending = new PendingCall();
+        calls.put( callId, pending );
+        try {
+            send( req.toFrame() );
+            return pending.await( CALL_TIMEOUT + serverWait );
+        } finally {
+            calls.remove( callId );
+        }
+    }
+
+    private void send( ByteBuffer frame ) throws RemoteException {
+        if (closed)
+            throw new RemoteException( "connection closed" );
+        try {
+            synchronized (out) {
+                out.write( frame.array(), frame.arrayOffset()+frame.position(), frame.remaining() );
+                out.flush();
+            }
+        } catch (IOException e) {
+            close();
+            throw new RemoteException( "connection lost", e );
+        }
+    }
+
+    /**
+     * Reader thread: complete our calls with their replies, and pass the
+     * server's calls to the callback thread.
+     */
+    private void readFrames() {
+        try {
+            while (!closed) {
+                int length = in.readInt();
+                if (length<HEADER-4 || length>MAX_FRAME)
+                    throw new IOException( "bad frame length " + length );
+                byte[] bytes = new byte[length];
+                in.readFully( bytes );
+                final ByteBuffer frame = ByteBuffer.wrap( bytes );
+                final int opcode = frame.get() & 0xFF;
+                final int callId = frame.getInt();
+                if (opcode==REPLY || opcode==ERROR) {
+                    PendingCall call = calls.remove( callId );
+                    if (call!=null) {
+                        if (opcode==REPLY)
+                            call.complete( frame );
+                        else
+                            call.fail( new WireFormat.Decoder(frame).readString() );
+                    }
+                }
+                else {
+                    callbacks.execute( new Runnable() {
+                        @Override
+                        public void run() {
+                            callback( opcode, callId, new WireFormat.Decoder(frame) );
+                        }
+                    });
+                }
+            }
+        } catch (Exception e) {
+            if (!closed)
+                Logger.getLogger(NioConnection.class.getName()).log(Level.WARNING, "connection to server lost", e);
+        }
+        close();
+    }
+
+    /**
+     * Callback thread: carry out one of the server's calls, and answer it.
+     */
+    private void callback( int opcode, int callId, WireFormat.Decoder req ) {
+        WireFormat.Encoder reply = new WireFormat.Encoder( REPLY, callId );
+        try {
+            switch (opcode) {
+                case CB_REQUEST_MATCH: {
+                    PlayerEntry challenger = req.readPlayerEntry();
+                    reply.writeEnum( response.requestToInitiateMatch( challenger, req.readInt() ) );
+                    break;
+                }
+                case CB_NOTIFY_SCORE:
+                    reply.writeEnum( response.notifyScore( req.readScorecard() ) );
+                    break;
+                case CB_ABORT_MATCH:
+                    response.abortMatch( req.readResultCode() );
+                    break;
+                case CB_ABORT_CONNECTION:
+                    response.abortConnection( req.readResultCode() );
+                    break;
+                case CB_LIST_ACTION: {
+                    IPlayerListListener l = listener;
+                    if (l!=null)
+                        l.notifyAction( req.readListAction() );
+                    break;
+                }
+                default:
+                    reply = new WireFormat.Encoder( ERROR, callId ).writeString( "unknown opcode " + opcode );
+            }
+        } catch (Exception e) {
+            reply = new WireFormat.Encoder( ERROR, callId ).writeString( String.valueOf(e) );
+        }
+        if (callId!=0) {
+            try {
+                send( reply.toFrame() );
+            } catch (RemoteException e) {}
+        }
+    }
+}
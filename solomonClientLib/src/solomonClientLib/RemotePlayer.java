@@ -209,7 +209,8 @@ public class RemotePlayer
      * 
      * As the action of playing a round, make a gesture.  This function 
      * sends the gesture to the Solomon Server, which is arbitrating the 
-     * match.  A match must be already in play.
+     * match.  A match must be already in play.  (When the gesture is 
+     * always followed by getScore(), playRound() does both at once.)
      * 
      * @param g the choice of ROCK/PAPER/SCISSORS
      * @return 
@@ -245,6 +246,55 @@ public class RemotePlayer
         return score;
     }
     
+    /**
+     * Play a round: make a gesture, and return the results of the round
+     * 
+     * This is the fast path for the common sequence of doGesture() followed 
+     * by getScore(): the Solomon Server records the gesture, waits for the 
+     * opponent's, and returns the results in a single request.
+     * 
+     * @param g the choice of ROCK/PAPER/SCISSORS
+     * @return object containing fields describing the match status, as 
+     * for getScore()
+     */
+    public Scorecard playRound( Gesture g )
+    {
+        Scorecard score = Server.getInstance().playRound(g);
+        if (score!=null)
+            gameStatus.updateProgress(
+                    score.roundsPlayed,
+                    score.myScore,
+                    score.ties,
+                    score.opponentScore );
+        return score;
+    }
+    
+    /**
+     * Play a run of rounds whose gestures are decided in advance
+     * 
+     * For strategies that don't depend on the opponent's moves, this 
+     * commits to the gestures for many rounds in a single request.  The 
+     * Solomon Server plays as many of them as the opponent has committed 
+     * to, and returns the results as a block; rounds still waiting on the 
+     * opponent are reported by later calls (which may pass no gestures).  
+     * Both players must play the match this way.
+     * 
+     * @param gestures the choices of ROCK/PAPER/SCISSORS for the next rounds
+     * @return the results of the rounds played since the last call, or 
+     * null if there is no match in play
+     */
+    public ScorecardBlock submitGestures( Gesture[] gestures )
+    {
+        ScorecardBlock block = Server.getInstance().submitGestures(gestures);
+        if (block!=null)
+            gameStatus.updateProgress(
+                    block.roundsPlayed,
+                    block.myScore,
+                    block.ties,
+                    block.opponentScore );
+        return block;
+    }
+    
     /**
      * Abnormal abort of the current match.
      * 
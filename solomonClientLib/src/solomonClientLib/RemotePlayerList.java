@@ -5,6 +5,7 @@ import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import javax.swing.ListModel;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
@@ -54,18 +55,40 @@ public class RemotePlayerList extends UnicastRemoteObject
     ArrayList<PlayerEntry> list;
     boolean bListening = false;
     
+    /**
+     * every player on the server, by ID, as of tableVersion; kept up to 
+     * date with deltas so a refresh only transfers what changed
+     */
+    private LinkedHashMap<Integer,PlayerEntry> table = new LinkedHashMap<Integer,PlayerEntry>();
+    private long tableVersion = 0;
+    
     public void refresh()
     {
-        // get the whole list
-        ArrayList<PlayerEntry> tempList = Server.getInstance().getAvailablePlayersList();
-        if (!bListening) {
-            Server.getInstance().addPlayerListListener(this);
-            bListening = true;
+        // get what changed since last time (or the whole list)
+        PlayerListDelta delta = Server.getInstance().getPlayerListSince( tableVersion );
+        if (delta!=null) {
+            if (delta.snapshot) {
+                table.clear();
+                for ( PlayerEntry entry: delta.players )
+                    table.put( entry.id, entry );
+            }
+            for ( ListAction change: delta.changes ) {
+                if (change.event==ListAction.Action.REMOVE)
+                    table.remove( change.player.id );
+                else
+                    table.put( change.player.id, change.player );
+            }
+            tableVersion = delta.version;
         }
         
+        // (re-)register every time: the server drops listeners that fall 
+        // too far behind, and re-registering is harmless if we're still on
+        Server.getInstance().addPlayerListListener(this);
+        bListening = true;
+        
         // only include available players who are not us
         ArrayList<PlayerEntry> tempList2 = new ArrayList<PlayerEntry>();
-        for ( PlayerEntry entry: tempList ) {
+        for ( PlayerEntry entry: table.values() ) {
             if (entry.state==ConnectionState.AVAILABLE_FOR_PLAY
                     && entry.id!=Server.getInstance().playerID)
                 tempList2.add(entry);
@@ -57,9 +57,24 @@ public class Server
      */
     static final int GET_SCORE_MAX_RETRIES = 50;
     
+    /**
+     * Longest the server may hold a getScore() request waiting for the 
+     * opponent, before declaring us fatally out of synchronization.  (As 
+     * long as we were once prepared to keep retrying.)
+     */
+    static final long AWAIT_SCORE_TIMEOUT = SYNCHRONIZING_LATENCY * GET_SCORE_MAX_RETRIES;
+    
     private static final String CLIENT_PROPERTIES_FILENAME = "solomonClient.properties";
     private static final String PROP_FILE_HEADER_COMMENT = "Solomon Client Library Properties File";
     private static final String SERVER_ADDRESS_KEY = "serverAddress";
+    
+    /**
+     * Which transport to talk to the server with: "rmi" (the default) or 
+     * "nio", for the binary protocol.  Set in the properties file, or 
+     * with the solomon.transport system property.
+     */
+    private static final String TRANSPORT_KEY = "transport";
+    private static final String NIO_PORT_KEY = "nioPort";
     private static final int PING_TIMEOUT = 15; 
     private static final int PORT_SCAN_TIMEOUT = 100;
     private Properties prop;
@@ -314,8 +329,18 @@ public class Server
         // try looking up and registering with the Solomon Server
         try
         {
-            IRegistrar registrar = (IRegistrar) Naming.lookup( serverAddr + "Registrar"); // TODO global name
-            conn = registrar.register( teamName, response );
+            String transport = System.getProperty( "solomon.transport", 
+                                                   prop.getProperty( TRANSPORT_KEY, "rmi" ) );
+            if (transport.equalsIgnoreCase("nio")) {
+                String nioPort = prop.getProperty( NIO_PORT_KEY, String.valueOf(WireProtocol.PORT) );
+                conn = NioConnection.register( hostOf(serverAddr), 
+                                               Integer.parseInt(nioPort), 
+                                               teamName, response );
+            }
+            else {
+                IRegistrar registrar = (IRegistrar) Naming.lookup( serverAddr + "Registrar"); // TODO global name
+                conn = registrar.register( teamName, response );
+            }
             if (conn!=null) {
                 playerID = conn.getID();
                 if (playerID==0) {
@@ -338,7 +363,7 @@ public class Server
             System.out.println( "ClientLib failed binding the Registrar for team '"+teamName+"': "+e);
             rc = E_SERVER_NOT_FOUND;             
         }
-        catch (RemoteException e)
+        catch (IOException e)
         {
             // TODO log extraordinary circumstances
             System.out.println( "ClientLib failed registering team '"+teamName+"': "+e);
@@ -353,6 +378,19 @@ public class Server
         return rc;
     }
     
+    /**
+     * @return the host part of a server address of the form //host:port/
+     */
+    private static String hostOf( String serverAddr ) {
+        String host = serverAddr;
+        if (host.startsWith("//"))
+            host = host.substring(2);
+        int end = host.indexOf(':');
+        if (end<0)
+            end = host.indexOf('/');
+        return end<0 ? host : host.substring(0,end);
+    }
+    
     public void setNumberOfRounds( int numberOfRounds ) {
         this.numberOfRounds = numberOfRounds;
     }
@@ -378,6 +416,29 @@ public class Server
         return list;
     }
     
+    /**
+     * Retrieve the changes to the player list since a previous call.
+     * 
+     * @param version version from the previous delta, or 0 for everything
+     * @return the changes, or null if there is no connection or it failed
+     */
+    public PlayerListDelta getPlayerListSince( long version )
+    {
+        PlayerListDelta delta = null;
+        
+        if (conn!=null) {
+            try
+            {
+                delta = conn.getPlayerListSince( version );
+            }
+            catch (RemoteException e)
+            {
+                System.out.println( "ClientLib conn.getPlayerListSince returned " + e );
+            }
+        }
+        return delta;
+    }
+    
     public ResultCode doGesture( Gesture g )
     {
         ResultCode rc = RC_OK;
@@ -417,30 +478,67 @@ public class Server
     {
         Scorecard score = null;
         ResultCode rc = RC_OK;
-        int retryCount = GET_SCORE_MAX_RETRIES;
         final EnumSet<ResultCode> FATAL_RC
                 = EnumSet.of( RC_MATCH_ENDED, 
                               E_SCORE_NOT_AVAILABLE,
                               E_NO_CONNECTION );
         try
         {
+            // the server holds on to the request until the opponent has 
+            // gestured (or we've waited as long as we used to retry)
             if (conn==null)
                 rc = E_NO_CONNECTION;
-            else do {
-                score = conn.getScorecard();
+            else {
+                score = conn.awaitScorecard( 0, AWAIT_SCORE_TIMEOUT );
                 if (score==null) 
                     rc = E_SCORE_NOT_AVAILABLE;
-                else {
+                else
                     rc = score.rc;
-                    if (rc!=RC_OK) {
-                        try { Thread.sleep(SYNCHRONIZING_LATENCY); }
-                        catch (InterruptedException e) {}
-                    }
-                }
-            } while (rc!=RC_OK 
-                    && !FATAL_RC.contains(rc) 
-                    && --retryCount>0 );
-            if (retryCount==0)
+            }
+            if (rc!=RC_OK && !FATAL_RC.contains(rc))
+                rc = E_LOSS_OF_SYNCHRONIZATION;
+        }
+        catch (RemoteException e)
+        {
+            // TODO log extraordinary circumstance
+        }
+        if (score!=null)
+            score.rc = rc;
+        return score;
+    }
+    
+    
+    /**
+     * Play a whole round in one request to the server: make the gesture, 
+     * wait for the opponent's, and return the result.  This is the 
+     * equivalent of doGesture() followed by getScore(), at half the 
+     * round trips.
+     * 
+     * @param g our gesture for this round
+     * @return the score after the round, or null if there is no match
+     */
+    public Scorecard playRound( Gesture g )
+    {
+        Scorecard score = null;
+        ResultCode rc = RC_OK;
+        final EnumSet<ResultCode> FATAL_RC
+                = EnumSet.of( RC_MATCH_ENDED, 
+                              E_UNRECOGNIZED_PLAYER,
+                              E_MATCH_ENDED,
+                              E_SCORE_NOT_AVAILABLE,
+                              E_NO_CONNECTION );
+        try
+        {
+            if (conn==null)
+                rc = E_NO_CONNECTION;
+            else {
+                score = conn.playRound( g, AWAIT_SCORE_TIMEOUT );
+                if (score==null) 
+                    rc = E_SCORE_NOT_AVAILABLE;
+                else
+                    rc = score.rc;
+            }
+            if (rc!=RC_OK && !FATAL_RC.contains(rc))
                 rc = E_LOSS_OF_SYNCHRONIZATION;
         }
         catch (RemoteException e)
@@ -452,6 +550,28 @@ public class Server
         return score;
     }
     
+    /**
+     * Commit to a run of gestures at once, and collect the results of the 
+     * rounds played since the last call.  Waits (up to the usual score 
+     * timeout) for the opponent to commit to the same rounds.
+     * 
+     * @param gestures our gestures for the next rounds, in order
+     * @return the block of results, or null if there is no match
+     */
+    public ScorecardBlock submitGestures( Gesture[] gestures )
+    {
+        ScorecardBlock block = null;
+        try
+        {
+            if (conn!=null)
+                block = conn.submitGestures( gestures, AWAIT_SCORE_TIMEOUT );
+        }
+        catch (RemoteException e)
+        {
+            // TODO log extraordinary circumstance
+        }
+        return block;
+    }
     
     public ResultCode requestRemoteMatch( int playerID, 
                                           int maxNumberOfRounds )
@@ -0,0 +1,188 @@
+package transportbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import solomonserver.*;
+
+/**
+ * Compares the sizes and costs of the per-round value types as they were
+ * (default Java serialization, reproduced here by look-alike classes), as
+ * they are now (Externalizable, in the WireFormat encodings), and in an
+ * NIO frame.  Each value is first checked to survive the round trip.
+ *
+ * The optional argument is the number of serialize/deserialize iterations.
+ */
+public class SerializationBench {
+
+    public static void main( String[] args ) throws Exception {
+        int iterations = args.length>0 ? Integer.parseInt(args[0]) : 200000;
+
+        Scorecard score = new Scorecard();
+        score.rc              = ResultCode.RC_OK;
+        score.myGesture       = Gesture.ROCK;
+        score.opponentGesture = Gesture.SCISSORS;
+        score.myScore         = 412;
+        score.opponentScore   = 397;
+        score.ties            = 391;
+        score.roundsPlayed    = 1200;
+        score.maxRounds       = 2000;
+
+        PlayerEntry entry = new PlayerEntry();
+        entry.teamName = "Rocky";
+        entry.origin   = "10.0.0.17";
+        entry.id       = 1234567;
+        entry.state    = ConnectionState.MATCH_IN_PLAY;
+
+        ListAction action = new ListAction( ListAction.Action.CHANGE, entry );
+        action.version = 98765;
+
+        check( score, roundTrip(score) );
+        check( entry, roundTrip(entry) );
+        check( action, roundTrip(action) );
+        check( score, new WireFormat.Decoder( payload( new WireFormat.Encoder(WireProtocol.REPLY,1).writeScorecard(score) ) ).readScorecard() );
+        check( action, new WireFormat.Decoder( payload( new WireFormat.Encoder(WireProtocol.REPLY,1).writeListAction(action) ) ).readListAction() );
+        System.out.println( "round trips OK" );
+        System.out.println();
+
+        System.out.printf( "%-18s %10s %10s %10s %10s %10s\n",
+                "", "call", "per value", "frame", "write ns", "read ns" );
+        report( "Scorecard",   new LegacyScorecard(score), -1, iterations );
+        report( "",            score, new WireFormat.Encoder(WireProtocol.REPLY,1).writeScorecard(score).toFrame().remaining(), iterations );
+        report( "PlayerEntry", new LegacyPlayerEntry(entry), -1, iterations );
+        report( "",            entry, new WireFormat.Encoder(WireProtocol.REPLY,1).writePlayerEntry(entry).toFrame().remaining(), iterations );
+        report( "ListAction",  new LegacyListAction(action), -1, iterations );
+        report( "",            action, new WireFormat.Encoder(WireProtocol.REPLY,1).writeListAction(action).toFrame().remaining(), iterations );
+        System.out.println();
+        System.out.println( "call:      bytes for one value in a fresh stream, as in an RMI call" );
+        System.out.println( "per value: bytes for each further value in the same stream" );
+        System.out.println( "frame:     bytes for a whole NIO reply frame carrying the value" );
+    }
+
+    private static void report( String name, Object value, int frame, int iterations ) throws Exception {
+        int call = serialize(value).length;
+        int perValue = serialize( copies(value,101) ).length - serialize( copies(value,100) ).length;
+
+        byte[] bytes = serialize(value);
+        long start = System.nanoTime();
+        for (int i=0; i<iterations; i++)
+            bytes = serialize(value);
+        long write = (System.nanoTime()-start) / iterations;
+
+        start = System.nanoTime();
+        for (int i=0; i<iterations; i++)
+            deserialize(bytes);
+        long read = (System.nanoTime()-start) / iterations;
+
+        System.out.printf( "%-18s %10s %10d %10s %10d %10d\n",
+                name.length()==0 ? "  compact" : name + " (was)",
+                call, perValue, frame<0 ? "-" : String.valueOf(frame), write, read );
+    }
+
+    /* *** HELPERS *** */
+
+    private static Object[] copies( Object value, int n ) throws Exception {
+        Object[] values = new Object[n];
+        for (int i=0; i<n; i++)
+            values[i] = deserialize( serialize(value) );
+        return values;
+    }
+
+    private static byte[] serialize( Object value ) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( bytes );
+        if (value instanceof Object[]) {
+            for (Object o : (Object[])value)
+                out.writeObject(o);
+        }
+        else
+            out.writeObject( value );
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize( byte[] bytes ) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream(bytes) );
+        return in.readObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip( T value ) throws Exception {
+        return (T)deserialize( serialize(value) );
+    }
+
+    private static ByteBuffer payload( WireFormat.Encoder frame ) {
+        ByteBuffer buf = frame.toFrame();
+        buf.position( buf.position() + WireProtocol.HEADER );
+        return buf;
+    }
+
+    private static void check( Object expected, Object actual ) {
+        if (!describe(expected).equals(describe(actual)))
+            throw new IllegalStateException( "round trip failed:\n  " + describe(expected) + "\n  " + describe(actual) );
+    }
+
+    private static String describe( Object o ) {
+        if (o instanceof Scorecard) {
+            Scorecard s = (Scorecard)o;
+            return s.rc + " " + s.myGesture + " " + s.opponentGesture + " " + s.myScore + " "
+                    + s.opponentScore + " " + s.ties + " " + s.roundsPlayed + " " + s.maxRounds;
+        }
+        if (o instanceof PlayerEntry) {
+            PlayerEntry e = (PlayerEntry)o;
+            return e.teamName + " " + e.origin + " " + e.id + " " + e.state;
+        }
+        ListAction a = (ListAction)o;
+        return a.event + " " + a.version + " " + describe(a.player);
+    }
+
+    /* *** THE DEFAULT SERIALIZED FORMS *** */
+
+    // the same fields as before, serialized the default way
+
+    private static class LegacyScorecard implements Serializable {
+        ResultCode rc;
+        Gesture myGesture, opponentGesture;
+        int myScore, opponentScore, ties, roundsPlayed, maxRounds;
+
+        LegacyScorecard( Scorecard s ) {
+            rc = s.rc;
+            myGesture = s.myGesture;
+            opponentGesture = s.opponentGesture;
+            myScore = s.myScore;
+            opponentScore = s.opponentScore;
+            ties = s.ties;
+            roundsPlayed = s.roundsPlayed;
+            maxRounds = s.maxRounds;
+        }
+    }
+
+    private static class LegacyPlayerEntry implements Serializable {
+        String teamName, origin;
+        int id;
+        ConnectionState state;
+
+        LegacyPlayerEntry( PlayerEntry e ) {
+            teamName = e.teamName;
+            origin = e.origin;
+            id = e.id;
+            state = e.state;
+        }
+    }
+
+    private static class LegacyListAction implements Serializable {
+        ListAction.Action event;
+        LegacyPlayerEntry player;
+        long version;
+
+        LegacyListAction( ListAction a ) {
+            event = a.event;
+            player = new LegacyPlayerEntry( a.player );
+            version = a.version;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package transportbench;
+
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Random;
+import solomonClientLib.NioConnection;
+import solomonserver.*;
+
+/**
+ * Measures rounds per second over each of the Solomon Server's transports,
+ * side by side.  For each transport, two players register with the server
+ * and play one match against each other, a round per playRound() call;
+ * then another, submitting their gestures in batches.
+ *
+ * The first argument is the server's host; the second, the number of
+ * rounds per match.
+ */
+public class TransportBench {
+
+    /**
+     * how many gestures each player submits at a time, in batch matches
+     */
+    private static final int BATCH = 256;
+
+    /**
+     * the most rounds the server allows in a match
+     */
+    private static final int MAX_ROUNDS = 0x7FFF;
+
+    private static final long TIMEOUT = 10000;
+
+    public static void main( String[] args ) throws Exception {
+        String host = args.length>0 ? args[0] : "localhost";
+        int rounds  = args.length>1 ? Integer.parseInt(args[1]) : 10000;
+
+        System.out.printf( "%-6s %12s %12s\n", "", "rounds/sec", "batched" );
+        for (String transport : new String[] { "rmi", "nio" }) {
+            double single  = run( host, transport, rounds, false );
+            double batched = run( host, transport, Math.min( rounds*16, MAX_ROUNDS ), true );
+            System.out.printf( "%-6s %12.0f %12.0f\n", transport, single, batched );
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Play one match between two freshly registered players.
+     *
+     * @return rounds per second
+     */
+    private static double run( String host, String transport, final int rounds, final boolean batch )
+            throws Exception
+    {
+        String name = "bench-" + transport + (batch ? "-batch" : "");
+        final IConnection a = register( host, transport, name + "-A" );
+        final IConnection b = register( host, transport, name + "-B" );
+        ResultCode rc = a.requestRemoteMatch( b.getID(), rounds );
+        if (rc!=ResultCode.RC_OK)
+            throw new IllegalStateException( "match refused: " + rc );
+
+        Thread[] players = new Thread[2];
+        final Exception[] failure = new Exception[1];
+        long start = System.nanoTime();
+        for (int p=0; p<2; p++) {
+            final IConnection me = p==0 ? a : b;
+            final Random random = new Random(p);
+            players[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (batch)
+                            playBatched( me, random, rounds );
+                        else
+                            playSingly( me, random, rounds );
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            players[p].start();
+        }
+        for (Thread t : players)
+            t.join();
+        long elapsed = System.nanoTime() - start;
+        if (failure[0]!=null)
+            throw failure[0];
+
+        close(a);
+        close(b);
+        return rounds * 1e9 / elapsed;
+    }
+
+    private static void playSingly( IConnection me, Random random, int rounds ) throws RemoteException {
+        for (int round=1; round<=rounds; round++) {
+            Scorecard score = me.playRound( randomGesture(random), TIMEOUT );
+            if (score==null || score.rc!=ResultCode.RC_OK)
+                throw new IllegalStateException( "round " + round + ": " + score );
+        }
+    }
+
+    private static void playBatched( IConnection me, Random random, int rounds ) throws RemoteException {
+        int played = 0;
+        int submitted = 0;
+        while (played<rounds) {
+            Gesture[] gestures = new Gesture[ Math.min( BATCH, rounds-submitted ) ];
+            for (int i=0; i<gestures.length; i++)
+                gestures[i] = randomGesture(random);
+            submitted += gestures.length;
+            ScorecardBlock block = me.submitGestures( gestures, TIMEOUT );
+            if (block==null || block.rc==ResultCode.E_MATCH_ENDED)
+                throw new IllegalStateException( "batch: " + block );
+            played += block.size();
+        }
+    }
+
+    private static Gesture randomGesture( Random random ) {
+        switch (random.nextInt(3)) {
+            case 0:  return Gesture.ROCK;
+            case 1:  return Gesture.PAPER;
+            default: return Gesture.SCISSORS;
+        }
+    }
+
+    private static IConnection register( String host, String transport, String teamName )
+            throws Exception
+    {
+        IConnection conn;
+        if (transport.equals("nio"))
+            conn = NioConnection.register( host, WireProtocol.PORT, teamName, new Response() );
+        else {
+            IRegistrar registrar = (IRegistrar)Naming.lookup( "//" + host + ":" + Registrar.PORT + "/Registrar" );
+            conn = registrar.register( teamName, new Response() );
+        }
+        if (conn==null)
+            throw new IllegalStateException( "registration refused for " + teamName );
+        return conn;
+    }
+
+    private static void close( IConnection conn ) {
+        if (conn instanceof NioConnection)
+            ((NioConnection)conn).close();
+    }
+
+    /**
+     * Accepts every challenge; collects scores by polling, not by push
+     */
+    private static class Response extends UnicastRemoteObject implements IResponse {
+        Response() throws RemoteException {}
+
+        @Override
+        public ResultCode requestToInitiateMatch( PlayerEntry challenger, int maxNumberOfRounds ) {
+            return ResultCode.RC_OK;
+        }
+
+        @Override
+        public void abortMatch( ResultCode rc ) {}
+
+        @Override
+        public void abortConnection( ResultCode rc ) {}
+
+        @Override
+        public ResultCode notifyScore( Scorecard score ) {
+            return ResultCode.E_NOT_IMPLEMENTED;
+        }
+    }
+}